@@ -0,0 +1,163 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.envers.bugs;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import org.hibernate.envers.Audited;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassInjector;
+
+/**
+ * Generates annotated entity classes at test time, for problems that only show with large domain models,
+ * such as slow bootstrap or memory footprint of the audit metadata.
+ * <p>
+ * Each entity {@code EntityN} has basic fields of various types, and lazy many-to-one associations
+ * to the entities generated before it. Entities form inheritance hierarchies of {@code inheritanceDepth + 1} classes,
+ * mapped with the default single table strategy: only the root of each hierarchy declares an identifier.
+ * All entities are {@link Audited}, unless told otherwise.
+ * <p>
+ * To test with the generated classes, return them from {@code getAnnotatedClasses()}, e.g.:
+ * <pre>{@code
+ * private static final Class<?>[] ENTITIES = new DomainModelGenerator( "org.hibernate.envers.bugs.generated" )
+ *         .entities( 500 ).associationFanOut( 3 ).inheritanceDepth( 2 ).load();
+ *
+ * protected Class[] getAnnotatedClasses() {
+ *     return ENTITIES;
+ * }
+ * }</pre>
+ * Generate them once, in a static field: classes generated again are different classes,
+ * for which {@link SessionFactoryCache} would build another SessionFactory.
+ * Generated entities have no accessors: use them through queries, or through reflection,
+ * as {@link GeneratedDomainModelTestCase} does.
+ * <p>
+ * This is the ORM template's generator, plus {@link #audited(boolean)}: each template module must work
+ * once copied on its own, so they do not share code.
+ */
+public class DomainModelGenerator {
+
+	private static final Class<?>[] FIELD_TYPES = { String.class, Long.class, Boolean.class, LocalDate.class };
+
+	private final String packageName;
+
+	private int entities = 10;
+
+	private int fieldsPerEntity = 5;
+
+	private int associationFanOut = 1;
+
+	private int inheritanceDepth = 0;
+
+	private boolean audited = true;
+
+	/**
+	 * @param packageName The package of the generated classes: use a package of its own,
+	 * so that the generated classes can be told apart easily.
+	 */
+	public DomainModelGenerator(String packageName) {
+		this.packageName = packageName;
+	}
+
+	public DomainModelGenerator entities(int entities) {
+		this.entities = entities;
+		return this;
+	}
+
+	public DomainModelGenerator fieldsPerEntity(int fieldsPerEntity) {
+		this.fieldsPerEntity = fieldsPerEntity;
+		return this;
+	}
+
+	/**
+	 * @param associationFanOut The number of many-to-one associations of each entity, each to a different entity
+	 * among those generated just before it.
+	 */
+	public DomainModelGenerator associationFanOut(int associationFanOut) {
+		this.associationFanOut = associationFanOut;
+		return this;
+	}
+
+	/**
+	 * @param inheritanceDepth The number of entity subclasses below each root entity: 0 for no inheritance.
+	 */
+	public DomainModelGenerator inheritanceDepth(int inheritanceDepth) {
+		this.inheritanceDepth = inheritanceDepth;
+		return this;
+	}
+
+	/**
+	 * @param audited Whether to annotate the generated entities with {@link Audited}, e.g. {@code false}
+	 * to compare with the same domain model without Envers.
+	 */
+	public DomainModelGenerator audited(boolean audited) {
+		this.audited = audited;
+		return this;
+	}
+
+	/**
+	 * @return The bytecode of the generated classes, by class name, in generation order: superclasses first.
+	 */
+	public Map<String, byte[]> generate() {
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		List<TypeDescription> generated = new ArrayList<>();
+		for ( int i = 1; i <= entities; i++ ) {
+			String simpleName = "Entity" + i;
+			boolean root = ( i - 1 ) % ( inheritanceDepth + 1 ) == 0;
+			DynamicType.Builder<?> builder = new ByteBuddy()
+					.subclass( root ? TypeDescription.ForLoadedType.of( Object.class ) : generated.get( i - 2 ) )
+					.name( packageName + "." + simpleName )
+					.annotateType( AnnotationDescription.Builder.ofType( Entity.class ).define( "name", simpleName ).build() );
+			if ( audited ) {
+				builder = builder.annotateType( AnnotationDescription.Builder.ofType( Audited.class ).build() );
+			}
+			if ( root ) {
+				builder = builder.defineField( "id", Long.class, Visibility.PRIVATE )
+						.annotateField( AnnotationDescription.Builder.ofType( Id.class ).build() );
+			}
+			// Subclasses share the table of their root: field names, hence column names, must differ from one entity to the next.
+			for ( int field = 1; field <= fieldsPerEntity; field++ ) {
+				builder = builder.defineField( "entity" + i + "Field" + field, FIELD_TYPES[field % FIELD_TYPES.length], Visibility.PRIVATE );
+			}
+			for ( int association = 1; association <= Math.min( associationFanOut, i - 1 ); association++ ) {
+				builder = builder.defineField( "entity" + i + "Association" + association, generated.get( i - 1 - association ), Visibility.PRIVATE )
+						.annotateField( AnnotationDescription.Builder.ofType( ManyToOne.class ).define( "fetch", FetchType.LAZY ).build() );
+			}
+			DynamicType.Unloaded<?> type = builder.make();
+			classes.put( type.getTypeDescription().getName(), type.getBytes() );
+			generated.add( type.getTypeDescription() );
+		}
+		return classes;
+	}
+
+	/**
+	 * Defines the generated classes in the class loader of the tests, where Hibernate finds them by name
+	 * like any other entity class. A class cannot be defined twice: generate each model in a package of its own.
+	 *
+	 * @return The generated classes, ready to return from {@code getAnnotatedClasses()}.
+	 */
+	public Class<?>[] load() {
+		Map<String, byte[]> classes = generate();
+		Map<String, Class<?>> loaded = new ClassInjector.UsingReflection( DomainModelGenerator.class.getClassLoader() )
+				.injectRaw( classes );
+		return classes.keySet().stream().map( loaded::get ).toArray( Class<?>[]::new );
+	}
+
+}
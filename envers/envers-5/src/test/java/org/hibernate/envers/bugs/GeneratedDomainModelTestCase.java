@@ -0,0 +1,113 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.envers.bugs;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.hibernate.Hibernate;
+import org.hibernate.envers.AuditReader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This template demonstrates how to reproduce an issue with a generated, audited domain model:
+ * classes from {@link DomainModelGenerator#load()} go through {@link #getAnnotatedClasses()}, as in EnversUnitTestCase,
+ * and are used through reflection, since they have no accessors.
+ */
+public class GeneratedDomainModelTestCase extends AbstractEnversTestCase {
+
+	// Three hierarchies of three entities, e.g. Entity3 extends Entity2 extends Entity1,
+	// each entity referencing the two generated before it.
+	private static final Class<?>[] ENTITIES = new DomainModelGenerator( "org.hibernate.envers.bugs.generated.template" )
+			.entities( 9 ).fieldsPerEntity( 4 ).associationFanOut( 2 ).inheritanceDepth( 2 ).load();
+
+	@Override
+	protected Class[] getAnnotatedClasses() {
+		return ENTITIES;
+	}
+
+	@Test
+	public void generatedDomainModel() {
+		Object entity3 = newEntity( ENTITIES[2], 3L );
+		inTransaction( session -> {
+			Object entity1 = newEntity( ENTITIES[0], 1L );
+			Object entity2 = newEntity( ENTITIES[1], 2L );
+			set( entity2, "entity2Association1", entity1 );
+			set( entity3, "entity3Association1", entity2 );
+			set( entity3, "entity3Association2", entity1 );
+			set( entity3, "entity3Field4", "first value" );
+			session.persist( entity1 );
+			session.persist( entity2 );
+			session.persist( entity3 );
+		} );
+		inTransaction( session -> set( session.find( ENTITIES[2], 3L ), "entity3Field4", "second value" ) );
+
+		inAuditReader( reader -> {
+			for ( Class<?> entity : ENTITIES ) {
+				assertTrue( reader.isEntityClassAudited( entity ) );
+			}
+			List<Number> revisions = reader.getRevisions( ENTITIES[2], 3L );
+			assertEquals( 2, revisions.size() );
+			// Audit queries on the root of a hierarchy return its subclasses too.
+			assertEquals( 3, reader.createQuery().forEntitiesAtRevision( ENTITIES[0], revisions.get( 0 ) ).getResultList().size() );
+
+			Object firstRevision = reader.find( ENTITIES[2], 3L, revisions.get( 0 ) );
+			assertEquals( "first value", get( firstRevision, "entity3Field4" ) );
+			assertSame( ENTITIES[0], Hibernate.unproxy( get( firstRevision, "entity3Association2" ) ).getClass() );
+			assertEquals( "second value", get( reader.find( ENTITIES[2], 3L, revisions.get( 1 ) ), "entity3Field4" ) );
+		} );
+	}
+
+	private static Object newEntity(Class<?> type, Long id) {
+		try {
+			Object entity = type.getDeclaredConstructor().newInstance();
+			set( entity, "id", id );
+			return entity;
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static void set(Object entity, String fieldName, Object value) {
+		try {
+			field( entity.getClass(), fieldName ).set( entity, value );
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static Object get(Object entity, String fieldName) {
+		try {
+			return field( entity.getClass(), fieldName ).get( entity );
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	// Fields are declared by the generated class that introduces them, e.g. the id by the root of the hierarchy.
+	private static Field field(Class<?> type, String fieldName) {
+		for ( Class<?> declaring = type; declaring != null; declaring = declaring.getSuperclass() ) {
+			try {
+				Field field = declaring.getDeclaredField( fieldName );
+				field.setAccessible( true );
+				return field;
+			}
+			catch (NoSuchFieldException e) {
+				// Look in the superclass.
+			}
+		}
+		throw new IllegalArgumentException( "No field " + fieldName + " in " + type );
+	}
+
+}
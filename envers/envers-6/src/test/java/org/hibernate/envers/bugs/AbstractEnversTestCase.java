@@ -6,21 +6,194 @@
  */
 package org.hibernate.envers.bugs;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
 import org.hibernate.envers.AuditReader;
 import org.hibernate.envers.AuditReaderFactory;
-import org.hibernate.testing.junit4.BaseCoreFunctionalTestCase;
 
 /**
+ * Gives access to {@link AuditReader}s, each bound to a session this class opens, tracks, and closes after each test.
+ * <p>
+ * {@link #getAuditReader()} returns a reader bound to the test's {@code session}. For long read loops,
+ * prefer {@link #openAuditReader()} or {@link #openReadOnlyAuditReader()}, or {@link #fromAuditReader(Function)},
+ * which close their session when done. {@link #getOpenedAuditSessionCount()} and
+ * {@link #getAcquiredAuditConnectionCount()} tell how many sessions and JDBC connections the readers used.
+ *
  * @author Chris Cranford
  */
-public abstract class AbstractEnversTestCase extends BaseCoreFunctionalTestCase {
+public abstract class AbstractEnversTestCase extends SharedSessionFactoryTestCase {
 	private AuditReader auditReader;
+	private Session auditReaderSession;
 
+	private final List<Session> openAuditSessions = new ArrayList<>();
+	private int openedAuditSessions;
+	private final ConnectionTracker connectionTracker = new ConnectionTracker();
+
+	/**
+	 * @return A reader bound to the test's {@code session}, opening one if there is none, or it was closed.
+	 */
 	protected AuditReader getAuditReader() {
-		if ( auditReader == null || session == null || !session.isOpen() ) {
-			auditReader = AuditReaderFactory.get( openSession() );
+		if ( session == null || !session.isOpen() ) {
+			// Closed after the test, by BaseCoreFunctionalTestCase.
+			session = openAuditSession();
+		}
+		if ( auditReader == null || auditReaderSession != session ) {
+			auditReader = AuditReaderFactory.get( session );
+			auditReaderSession = session;
 		}
 		return auditReader;
 	}
 
+	/**
+	 * @return A reader bound to a new session, closed when the returned scope is, or after the test at the latest.
+	 */
+	protected AuditReaderScope openAuditReader() {
+		return new AuditReaderScope( openAuditSession() );
+	}
+
+	/**
+	 * For bulk reads, such as history exports: the session never flushes, does not keep snapshots of the entities
+	 * it loads, and bypasses the second-level cache. Call {@link AuditReaderScope#clear()} between chunks.
+	 *
+	 * @return A read-only reader bound to a new session, closed when the returned scope is, or after the test at the latest.
+	 */
+	protected AuditReaderScope openReadOnlyAuditReader() {
+		Session readOnlySession = openAuditSession();
+		readOnlySession.setDefaultReadOnly( true );
+		readOnlySession.setHibernateFlushMode( FlushMode.MANUAL );
+		readOnlySession.setCacheMode( CacheMode.IGNORE );
+		return new AuditReaderScope( readOnlySession );
+	}
+
+	protected <T> T fromAuditReader(Function<AuditReader, T> action) {
+		try ( AuditReaderScope scope = openAuditReader() ) {
+			return action.apply( scope.getAuditReader() );
+		}
+	}
+
+	protected void inAuditReader(Consumer<AuditReader> action) {
+		try ( AuditReaderScope scope = openAuditReader() ) {
+			action.accept( scope.getAuditReader() );
+		}
+	}
+
+	/**
+	 * @return The number of sessions opened for audit readers since the test started.
+	 */
+	protected int getOpenedAuditSessionCount() {
+		return openedAuditSessions;
+	}
+
+	/**
+	 * @return The number of sessions opened for audit readers, and not closed yet.
+	 */
+	protected int getOpenAuditSessionCount() {
+		return (int) openAuditSessions.stream().filter( Session::isOpen ).count();
+	}
+
+	/**
+	 * @return The number of JDBC connections acquired by the sessions of audit readers since the test started.
+	 */
+	protected int getAcquiredAuditConnectionCount() {
+		return connectionTracker.acquired;
+	}
+
+	/**
+	 * @return The number of JDBC connections held by the sessions of audit readers right now.
+	 */
+	protected int getHeldAuditConnectionCount() {
+		return connectionTracker.acquired - connectionTracker.released;
+	}
+
+	@Override
+	protected void cleanupTestData() throws Exception {
+		// Return their connections to the pool before truncation.
+		closeAuditSessions();
+		super.cleanupTestData();
+	}
+
+	@Override
+	protected void cleanupTest() throws Exception {
+		closeAuditSessions();
+		super.cleanupTest();
+	}
+
+	private Session openAuditSession() {
+		Session auditSession = sessionFactory().withOptions().eventListeners( connectionTracker ).openSession();
+		// Forget closed sessions, so that long read loops do not accumulate them.
+		openAuditSessions.removeIf( openAuditSession -> !openAuditSession.isOpen() );
+		openAuditSessions.add( auditSession );
+		openedAuditSessions++;
+		return auditSession;
+	}
+
+	private void closeAuditSessions() {
+		for ( Session auditSession : openAuditSessions ) {
+			if ( auditSession.isOpen() ) {
+				auditSession.close();
+			}
+		}
+		openAuditSessions.clear();
+		auditReader = null;
+		auditReaderSession = null;
+	}
+
+	/**
+	 * An {@link AuditReader} and the session it is bound to, which {@link #close()} closes.
+	 */
+	protected static final class AuditReaderScope implements AutoCloseable {
+		private final Session session;
+		private AuditReader auditReader;
+
+		private AuditReaderScope(Session session) {
+			this.session = session;
+			this.auditReader = AuditReaderFactory.get( session );
+		}
+
+		public AuditReader getAuditReader() {
+			return auditReader;
+		}
+
+		public Session getSession() {
+			return session;
+		}
+
+		/**
+		 * Empties the session, and replaces the reader, whose cache of audited entities would otherwise keep growing.
+		 */
+		public void clear() {
+			session.clear();
+			auditReader = AuditReaderFactory.get( session );
+		}
+
+		@Override
+		public void close() {
+			if ( session.isOpen() ) {
+				session.close();
+			}
+		}
+	}
+
+	private static final class ConnectionTracker extends BaseSessionEventListener {
+		private int acquired;
+		private int released;
+
+		@Override
+		public void jdbcConnectionAcquisitionEnd() {
+			acquired++;
+		}
+
+		@Override
+		public void jdbcConnectionReleaseEnd() {
+			released++;
+		}
+	}
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.envers.bugs;
+
+import java.util.List;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.envers.AuditReader;
+import org.hibernate.envers.Audited;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the sessions AbstractEnversTestCase opens for audit readers are closed, and their connections returned,
+ * when their scope closes, or after the test at the latest.
+ */
+public class AuditReaderLifecycleTestCase extends AbstractEnversTestCase {
+
+	// A scope the test leaves open, for cleanupTest() to check.
+	private AuditReaderScope leftOpen;
+
+	@Override
+	protected Class[] getAnnotatedClasses() {
+		return new Class[] { Note.class };
+	}
+
+	@Override
+	protected void cleanupTest() throws Exception {
+		super.cleanupTest();
+		if ( leftOpen != null ) {
+			assertFalse( leftOpen.getSession().isOpen() );
+			assertEquals( 0, getOpenAuditSessionCount() );
+			assertEquals( 0, getHeldAuditConnectionCount() );
+		}
+	}
+
+	@Test
+	public void scopesCloseTheirSession() {
+		Number revision = createNote();
+		int opened = getOpenedAuditSessionCount();
+		int acquired = getAcquiredAuditConnectionCount();
+
+		inAuditReader( reader -> {
+			assertEquals( "first", reader.find( Note.class, 1L, revision ).text );
+			assertEquals( 1, getOpenAuditSessionCount() );
+		} );
+		assertEquals( 0, getOpenAuditSessionCount() );
+
+		List<Number> revisions = fromAuditReader( reader -> reader.getRevisions( Note.class, 1L ) );
+		assertEquals( 1, revisions.size() );
+		assertEquals( 0, getOpenAuditSessionCount() );
+
+		AuditReaderScope scope = openAuditReader();
+		try ( AuditReaderScope closed = scope ) {
+			assertEquals( "first", closed.getAuditReader().find( Note.class, 1L, revision ).text );
+			assertTrue( closed.getSession().isOpen() );
+		}
+		assertFalse( scope.getSession().isOpen() );
+
+		assertEquals( opened + 3, getOpenedAuditSessionCount() );
+		assertEquals( 0, getOpenAuditSessionCount() );
+		// Each session read through a connection of its own, and returned it when closed.
+		assertTrue( getAcquiredAuditConnectionCount() >= acquired + 3 );
+		assertEquals( 0, getHeldAuditConnectionCount() );
+	}
+
+	@Test
+	public void readOnlyScope() {
+		Number revision = createNote();
+		int opened = getOpenedAuditSessionCount();
+
+		AuditReaderScope scope = openReadOnlyAuditReader();
+		try ( AuditReaderScope readOnly = scope ) {
+			Session session = readOnly.getSession();
+			assertTrue( session.isDefaultReadOnly() );
+			assertEquals( FlushMode.MANUAL, session.getHibernateFlushMode() );
+			assertEquals( CacheMode.IGNORE, session.getCacheMode() );
+
+			// The reader caches the entities it builds, until clear() replaces it.
+			AuditReader reader = readOnly.getAuditReader();
+			Note note = reader.find( Note.class, 1L, revision );
+			assertSame( note, reader.find( Note.class, 1L, revision ) );
+			assertTrue( getHeldAuditConnectionCount() <= 1 );
+
+			readOnly.clear();
+			assertNotSame( reader, readOnly.getAuditReader() );
+			Note reloaded = readOnly.getAuditReader().find( Note.class, 1L, revision );
+			assertNotSame( note, reloaded );
+			assertEquals( "first", reloaded.text );
+		}
+		assertFalse( scope.getSession().isOpen() );
+		assertEquals( opened + 1, getOpenedAuditSessionCount() );
+		assertEquals( 0, getHeldAuditConnectionCount() );
+	}
+
+	@Test
+	public void sessionsLeftOpenAreClosedAfterTest() {
+		Number revision = createNote();
+		int opened = getOpenedAuditSessionCount();
+
+		leftOpen = openAuditReader();
+		assertEquals( "first", leftOpen.getAuditReader().find( Note.class, 1L, revision ).text );
+		assertEquals( "first", getAuditReader().find( Note.class, 1L, revision ).text );
+
+		assertEquals( opened + 2, getOpenedAuditSessionCount() );
+		assertEquals( 2, getOpenAuditSessionCount() );
+		assertTrue( getHeldAuditConnectionCount() <= 2 );
+		// Closed by cleanupTest().
+	}
+
+	private Number createNote() {
+		inTransaction( session -> session.persist( new Note( 1L, "first" ) ) );
+		return fromAuditReader( reader -> reader.getRevisions( Note.class, 1L ).get( 0 ) );
+	}
+
+	@Audited
+	@Entity(name = "Note")
+	public static class Note {
+
+		@Id
+		private Long id;
+
+		private String text;
+
+		public Note() {
+		}
+
+		public Note(Long id, String text) {
+			this.id = id;
+			this.text = text;
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.envers.bugs;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.envers.Audited;
+import org.hibernate.envers.boot.internal.EnversService;
+import org.hibernate.envers.configuration.EnversSettings;
+import org.hibernate.envers.strategy.DefaultAuditStrategy;
+import org.hibernate.envers.strategy.ValidityAuditStrategy;
+import org.hibernate.stat.Statistics;
+
+import org.jboss.logging.Logger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This template demonstrates how to measure, or report, the cost of auditing on writes:
+ * it runs the same write workload without auditing, then with the default and the validity audit strategies,
+ * each with and without modified flags, in a SessionFactory built for each.
+ * Each transaction updates an account and persists a few entries for it, so it creates one revision.
+ * <p>
+ * For each configuration, it reports the median and 99th percentile commit latency (Envers writes the audit rows
+ * on commit), the overhead of the median over the run without auditing, and the SQL statements each revision adds.
+ * "Not audited" disables the Envers integration rather than removing {@link Audited}:
+ * this leaves the mapping of the entities themselves unchanged.
+ * <p>
+ * Tune it with the {@code audit.accounts}, {@code audit.transactions} and {@code audit.entries.per.transaction}
+ * system properties: 200 transactions per configuration by default, 2,000 with {@code -Dbenchmarks=full}
+ * (see {@link Benchmarks}).
+ */
+public class AuditWriteOverheadTestCase extends AbstractEnversTestCase {
+
+	private static final Logger log = Logger.getLogger( AuditWriteOverheadTestCase.class );
+
+	private static final int ACCOUNTS = Integer.getInteger( "audit.accounts", 100 );
+
+	private static final int TRANSACTIONS = Benchmarks.size( "audit.transactions", 2_000, 200 );
+
+	private static final int ENTRIES_PER_TRANSACTION = Integer.getInteger( "audit.entries.per.transaction", 5 );
+
+	private enum Auditing {
+		NOT_AUDITED( "not audited", false, null, false ),
+		DEFAULT( "default", true, DefaultAuditStrategy.class, false ),
+		DEFAULT_MODIFIED_FLAGS( "default, modified flags", true, DefaultAuditStrategy.class, true ),
+		VALIDITY( "validity", true, ValidityAuditStrategy.class, false ),
+		VALIDITY_MODIFIED_FLAGS( "validity, modified flags", true, ValidityAuditStrategy.class, true );
+
+		private final String label;
+		private final boolean enabled;
+		private final Class<?> strategy;
+		private final boolean modifiedFlags;
+
+		Auditing(String label, boolean enabled, Class<?> strategy, boolean modifiedFlags) {
+			this.label = label;
+			this.enabled = enabled;
+			this.strategy = strategy;
+			this.modifiedFlags = modifiedFlags;
+		}
+
+		private void configure(Configuration configuration) {
+			configuration.setProperty( EnversService.INTEGRATION_ENABLED, String.valueOf( enabled ) );
+			if ( strategy != null ) {
+				configuration.setProperty( EnversSettings.AUDIT_STRATEGY, strategy.getName() );
+			}
+			configuration.setProperty( EnversSettings.GLOBAL_WITH_MODIFIED_FLAG, String.valueOf( modifiedFlags ) );
+		}
+	}
+
+	@Override
+	protected Class[] getAnnotatedClasses() {
+		return new Class[] { Account.class, Entry.class };
+	}
+
+	@Override
+	protected void configure(Configuration configuration) {
+		super.configure( configuration );
+
+		configuration.setProperty( AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString() );
+		// Logging metrics for each of the thousands of sessions would take longer than the transactions.
+		configuration.setProperty( AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString() );
+	}
+
+	@Test
+	public void auditWriteOverhead() {
+		List<Result> results = new ArrayList<>();
+		for ( Auditing auditing : Auditing.values() ) {
+			// Each configuration changes the audit tables: build a SessionFactory, and a schema, for it only.
+			rebuildSessionFactory( auditing::configure );
+			results.add( run( auditing ) );
+		}
+
+		Result baseline = results.get( 0 );
+		StringBuilder sb = new StringBuilder( String.format( "%d transactions, each updating 1 account and persisting %d entries:%n",
+				TRANSACTIONS, ENTRIES_PER_TRANSACTION ) );
+		sb.append( String.format( "%-26s %14s %12s %10s %14s %16s%n",
+				"auditing", "p50 commit us", "p99 us", "overhead", "stmts/revision", "extra/revision" ) );
+		for ( Result result : results ) {
+			sb.append( String.format( "%-26s %14.1f %12.1f %9.0f%% %14.1f %16.1f%n",
+					result.auditing.label, result.percentileCommitMicros( 0.5 ), result.percentileCommitMicros( 0.99 ),
+					100.0 * ( result.percentileCommitMicros( 0.5 ) / baseline.percentileCommitMicros( 0.5 ) - 1 ),
+					result.statementsPerTransaction(), result.statementsPerTransaction() - baseline.statementsPerTransaction() ) );
+		}
+		log.info( sb );
+
+		for ( Result result : results.subList( 1, results.size() ) ) {
+			assertTrue( result.auditing.label + " should write audit rows",
+					result.statementsPerTransaction() > baseline.statementsPerTransaction() );
+		}
+	}
+
+	private Result run(Auditing auditing) {
+		List<Long> accountIds = new ArrayList<>();
+		inTransaction( session -> {
+			for ( int i = 0; i < ACCOUNTS; i++ ) {
+				Account account = new Account( "owner " + i );
+				session.persist( account );
+				accountIds.add( account.id );
+			}
+		} );
+
+		// The same accounts are updated in the same order for each configuration.
+		Random random = new Random( 42 );
+		// Let the JIT compile the write path, with and without Envers, before measuring.
+		write( accountIds, random, TRANSACTIONS / 4 );
+		Statistics statistics = sessionFactory().getStatistics();
+		statistics.clear();
+		long[] commitNanos = write( accountIds, random, TRANSACTIONS );
+		Result result = new Result( auditing, commitNanos, statistics.getPrepareStatementCount() );
+
+		if ( auditing.enabled ) {
+			// One revision for the creation of the account, then one per transaction that updated it.
+			Long accountId = accountIds.get( 0 );
+			long updates = fromTransaction( session -> session.find( Account.class, accountId ).updates );
+			assertEquals( updates + 1, (long) fromAuditReader( reader -> reader.getRevisions( Account.class, accountId ).size() ) );
+		}
+		return result;
+	}
+
+	/**
+	 * @return The time taken by the commit of each transaction.
+	 */
+	private long[] write(List<Long> accountIds, Random random, int transactions) {
+		long[] commitNanos = new long[transactions];
+		for ( int i = 0; i < transactions; i++ ) {
+			try ( Session session = sessionFactory().openSession() ) {
+				Transaction transaction = session.beginTransaction();
+				Account account = session.find( Account.class, accountIds.get( random.nextInt( accountIds.size() ) ) );
+				for ( int j = 0; j < ENTRIES_PER_TRANSACTION; j++ ) {
+					BigDecimal amount = BigDecimal.valueOf( random.nextInt( 20_000 ) - 10_000, 2 );
+					session.persist( new Entry( account, amount, "entry " + j + " of transaction " + i ) );
+					account.balance = account.balance.add( amount );
+				}
+				account.status = account.balance.signum() < 0 ? "overdrawn" : "open";
+				account.updates++;
+				long start = System.nanoTime();
+				transaction.commit();
+				commitNanos[i] = System.nanoTime() - start;
+			}
+		}
+		return commitNanos;
+	}
+
+	private static final class Result {
+
+		private final Auditing auditing;
+		private final long[] commitNanos;
+		private final long statements;
+
+		private Result(Auditing auditing, long[] commitNanos, long statements) {
+			this.auditing = auditing;
+			this.commitNanos = commitNanos.clone();
+			Arrays.sort( this.commitNanos );
+			this.statements = statements;
+		}
+
+		private double percentileCommitMicros(double percentile) {
+			int index = Math.min( commitNanos.length - 1, (int) Math.ceil( percentile * commitNanos.length ) - 1 );
+			return commitNanos[Math.max( 0, index )] / (double) TimeUnit.MICROSECONDS.toNanos( 1 );
+		}
+
+		private double statementsPerTransaction() {
+			return statements / (double) commitNanos.length;
+		}
+	}
+
+	@Audited
+	@Entity(name = "Account")
+	public static class Account {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		private String owner;
+
+		private String status = "open";
+
+		private BigDecimal balance = BigDecimal.ZERO;
+
+		private long updates;
+
+		@OneToMany(mappedBy = "account")
+		private List<Entry> entries = new ArrayList<>();
+
+		public Account() {
+		}
+
+		public Account(String owner) {
+			this.owner = owner;
+		}
+	}
+
+	@Audited
+	@Entity(name = "Entry")
+	public static class Entry {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		@ManyToOne
+		private Account account;
+
+		private BigDecimal amount;
+
+		private String description;
+
+		public Entry() {
+		}
+
+		public Entry(Account account, BigDecimal amount, String description) {
+			this.account = account;
+			this.amount = amount;
+			this.description = description;
+		}
+	}
+
+}
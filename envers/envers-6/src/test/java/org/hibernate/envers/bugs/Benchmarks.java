@@ -0,0 +1,37 @@
+package org.hibernate.envers.bugs;
+
+import java.util.Arrays;
+
+/**
+ * Sizes the workloads of the benchmark templates. A plain {@code mvn test} only runs them on a small workload,
+ * as smoke tests: pass {@code -Dbenchmarks=full} for the sizes worth reporting.
+ * The system property of each size, if set, overrides both.
+ */
+public final class Benchmarks {
+
+	/**
+	 * Whether {@code -Dbenchmarks=full} was passed.
+	 */
+	public static final boolean FULL = "full".equals( System.getProperty( "benchmarks" ) );
+
+	private Benchmarks() {
+	}
+
+	/**
+	 * @return The value of the system property {@code property}, if set,
+	 * otherwise {@code full} or {@code smoke} depending on {@link #FULL}.
+	 */
+	public static int size(String property, int full, int smoke) {
+		return Integer.getInteger( property, FULL ? full : smoke );
+	}
+
+	/**
+	 * As {@link #size(String, int, int)}, for comma-separated lists such as {@code 10,100,1000}.
+	 */
+	public static int[] sizes(String property, String full, String smoke) {
+		return Arrays.stream( System.getProperty( property, FULL ? full : smoke ).split( "," ) )
+				.mapToInt( size -> Integer.parseInt( size.trim() ) )
+				.toArray();
+	}
+
+}
@@ -18,6 +18,7 @@ import org.junit.Test;
 public class EnversUnitTestCase extends AbstractEnversTestCase {
 
 	// Add your entities here.
+	// To reproduce an issue that depends on the size of the domain model, return classes from DomainModelGenerator instead.
 	@Override
 	protected Class[] getAnnotatedClasses() {
 		return new Class[] {
@@ -55,5 +56,6 @@ public class EnversUnitTestCase extends AbstractEnversTestCase {
 	public void hhh123Test() throws Exception {
 		AuditReader reader = getAuditReader();
 		// Do stuff...
+		// For long read loops, use fromAuditReader() or openReadOnlyAuditReader() instead, which close their session.
 	}
 }
@@ -0,0 +1,296 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+package org.hibernate.envers.bugs;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.envers.AuditReader;
+import org.hibernate.envers.Audited;
+import org.hibernate.envers.configuration.EnversSettings;
+import org.hibernate.envers.query.AuditEntity;
+import org.hibernate.envers.strategy.DefaultAuditStrategy;
+import org.hibernate.envers.strategy.ValidityAuditStrategy;
+
+import org.jboss.logging.Logger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This template demonstrates how to measure, or report, how historic ("as of") reads scale with the revision history:
+ * it grows the history of a few departments and their employees, one revision per transaction, and at each of several
+ * history depths, reports the median latency of
+ * <ul>
+ * <li>{@link AuditReader#find(Class, Object, Number)} of an employee at a revision,</li>
+ * <li>{@code forEntitiesAtRevision}: all employees at a revision,</li>
+ * <li>{@code forRevisionsOfEntity}: all revisions of one employee,</li>
+ * <li>association traversal: an employee at a revision, then its department and the department's employees,</li>
+ * </ul>
+ * at random revisions, with the default then the validity audit strategy.
+ * Each read uses a new AuditReader, and session, so that nothing is served from the AuditReader cache.
+ * <p>
+ * The default strategy finds the state at a revision with a correlated subquery on the revision number,
+ * which gets slow quickly on H2: deeper histories are skipped once a read takes longer than a second.
+ * <p>
+ * Tune it with the {@code revisions.depths} (e.g. {@code 10,100,1000}), {@code revisions.departments},
+ * {@code revisions.employees}, {@code revisions.samples}, {@code revisions.sample.budget.ms}
+ * and {@code revisions.max.latency.ms} system properties. By default, histories only grow to 10 then 100 revisions:
+ * pass {@code -Dbenchmarks=full} to go on to 500 and 2,000 (see {@link Benchmarks}).
+ */
+public class RevisionQueryTestCase extends AbstractEnversTestCase {
+
+	private static final Logger log = Logger.getLogger( RevisionQueryTestCase.class );
+
+	private static final int[] DEPTHS = Benchmarks.sizes( "revisions.depths", "10,100,500,2000", "10,100" );
+
+	private static final int DEPARTMENTS = Integer.getInteger( "revisions.departments", 4 );
+
+	private static final int EMPLOYEES = Integer.getInteger( "revisions.employees", 20 );
+
+	private static final int SAMPLES = Integer.getInteger( "revisions.samples", 20 );
+
+	// Slow reads are sampled fewer times, down to once.
+	private static final long SAMPLE_BUDGET_MS = Long.getLong( "revisions.sample.budget.ms", 2_000 );
+
+	// Deeper histories are skipped once a read takes longer than this.
+	private static final long MAX_LATENCY_MS = Long.getLong( "revisions.max.latency.ms", 1_000 );
+
+	// Every few revisions, an employee moves to another department, picked at random.
+	private static final int MOVE_EVERY = 10;
+
+	@Override
+	protected Class[] getAnnotatedClasses() {
+		return new Class[] { Department.class, Employee.class };
+	}
+
+	@Override
+	protected void configure(Configuration configuration) {
+		super.configure( configuration );
+
+		// Logging metrics for each of the thousands of sessions would take longer than the queries.
+		configuration.setProperty( AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString() );
+	}
+
+	@Test
+	public void revisionQueries() {
+		Map<String, String> summary = new LinkedHashMap<>();
+		for ( Class<?> strategy : Arrays.asList( DefaultAuditStrategy.class, ValidityAuditStrategy.class ) ) {
+			// The validity strategy adds columns to the audit tables: build a SessionFactory, and a schema, for each.
+			rebuildSessionFactory( configuration -> configuration.setProperty( EnversSettings.AUDIT_STRATEGY, strategy.getName() ) );
+			History history = createHistory();
+			// Let the JIT compile the read paths before measuring.
+			for ( int i = 0; i < SAMPLES; i++ ) {
+				traverse( history, new Random( i ) );
+			}
+			boolean tooSlow = false;
+			for ( int depth : DEPTHS ) {
+				String run = strategy.getSimpleName() + " " + depth;
+				if ( tooSlow ) {
+					summary.put( run, String.format( "%10s", "skipped" ) );
+					continue;
+				}
+				history.growTo( depth );
+				long[] micros = measure( history );
+				summary.put( run, String.format( "%10d %12d %14d %12d", micros[0], micros[1], micros[2], micros[3] ) );
+				tooSlow = Arrays.stream( micros ).max().getAsLong() > TimeUnit.MILLISECONDS.toMicros( MAX_LATENCY_MS );
+			}
+		}
+
+		StringBuilder sb = new StringBuilder( String.format( "Median latency (us) of %d reads at random revisions, %d departments, %d employees:%n",
+				SAMPLES, DEPARTMENTS, EMPLOYEES ) );
+		sb.append( String.format( "%-28s %10s %12s %14s %12s%n", "strategy, revisions", "find", "entities at", "revisions of", "traversal" ) );
+		summary.forEach( (run, results) -> sb.append( String.format( "%-28s %s%n", run, results ) ) );
+		sb.append( String.format( "Audit readers opened %d sessions, which acquired %d JDBC connections.",
+				getOpenedAuditSessionCount(), getAcquiredAuditConnectionCount() ) );
+		log.info( sb );
+		assertEquals( 0, getOpenAuditSessionCount() );
+	}
+
+	private long[] measure(History history) {
+		Random random = new Random( 42 );
+		long find = medianMicros( random, r -> fromAuditReader( reader -> {
+			Employee employee = reader.find( Employee.class, history.randomEmployee( r ), history.randomRevision( r ) );
+			return employee == null ? 0 : 1;
+		} ) );
+		long entitiesAtRevision = medianMicros( random, r -> fromAuditReader( reader -> {
+			List<?> employees = reader.createQuery()
+					.forEntitiesAtRevision( Employee.class, history.randomRevision( r ) )
+					.getResultList();
+			assertEquals( EMPLOYEES, employees.size() );
+			return employees.size();
+		} ) );
+		long revisionsOfEntity = medianMicros( random, r -> fromAuditReader( reader -> reader.createQuery()
+				.forRevisionsOfEntity( Employee.class, true, false )
+				.add( AuditEntity.id().eq( history.randomEmployee( r ) ) )
+				.getResultList()
+				.size() ) );
+		long traversal = medianMicros( random, r -> traverse( history, r ) );
+		log.infof( "%d revisions: find %d us, forEntitiesAtRevision %d us, forRevisionsOfEntity %d us, traversal %d us",
+				history.revisions.size(), find, entitiesAtRevision, revisionsOfEntity, traversal );
+		return new long[] { find, entitiesAtRevision, revisionsOfEntity, traversal };
+	}
+
+	/**
+	 * Loads an employee at a revision, then its department, then the department's employees, at the same revision.
+	 *
+	 * @return The number of entities loaded.
+	 */
+	private int traverse(History history, Random random) {
+		return fromAuditReader( reader -> {
+			Employee employee = reader.find( Employee.class, history.randomEmployee( random ), history.randomRevision( random ) );
+			return 2 + employee.department.employees.size();
+		} );
+	}
+
+	private long medianMicros(Random random, ToIntFunction<Random> read) {
+		long[] nanos = new long[SAMPLES];
+		long budgetEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( SAMPLE_BUDGET_MS );
+		int samples = 0;
+		while ( samples < SAMPLES && ( samples == 0 || System.nanoTime() < budgetEnd ) ) {
+			long start = System.nanoTime();
+			read.applyAsInt( random );
+			nanos[samples++] = System.nanoTime() - start;
+		}
+		Arrays.sort( nanos, 0, samples );
+		return TimeUnit.NANOSECONDS.toMicros( nanos[samples / 2] );
+	}
+
+	private History createHistory() {
+		History history = new History();
+		inTransaction( session -> {
+			for ( int i = 0; i < DEPARTMENTS; i++ ) {
+				Department department = new Department( "department " + i );
+				session.persist( department );
+				history.departmentIds.add( department.id );
+			}
+			for ( int i = 0; i < EMPLOYEES; i++ ) {
+				Employee employee = new Employee( "employee " + i, session.getReference( Department.class, history.departmentIds.get( i % DEPARTMENTS ) ) );
+				session.persist( employee );
+				history.employeeIds.add( employee.id );
+				history.employeeDepartments.add( i % DEPARTMENTS );
+			}
+		} );
+		history.revisions.add( 1 );
+		return history;
+	}
+
+	/**
+	 * The departments and employees, and the revisions created so far: each revision changes all of them.
+	 */
+	private final class History {
+
+		private final List<Long> departmentIds = new ArrayList<>();
+
+		private final List<Long> employeeIds = new ArrayList<>();
+
+		// The index in departmentIds of the department of each employee.
+		private final List<Integer> employeeDepartments = new ArrayList<>();
+
+		private final Random moves = new Random( 42 );
+
+		private final List<Number> revisions = new ArrayList<>();
+
+		private void growTo(int depth) {
+			for ( int revision = revisions.size(); revision < depth; revision++ ) {
+				int current = revision;
+				inTransaction( session -> {
+					List<Department> departments = session.createSelectionQuery( "from Department order by id", Department.class ).getResultList();
+					for ( Department department : departments ) {
+						department.budget = department.budget.add( BigDecimal.TEN );
+					}
+					List<Employee> employees = session.createSelectionQuery( "from Employee order by id", Employee.class ).getResultList();
+					for ( Employee employee : employees ) {
+						employee.salary = employee.salary.add( BigDecimal.ONE );
+					}
+					if ( current % MOVE_EVERY == 0 && departments.size() > 1 ) {
+						int moving = current / MOVE_EVERY % employees.size();
+						int department = ( employeeDepartments.get( moving ) + 1 + moves.nextInt( departments.size() - 1 ) ) % departments.size();
+						employees.get( moving ).department = departments.get( department );
+						employeeDepartments.set( moving, department );
+					}
+				} );
+			}
+			// Every revision changes the first department.
+			revisions.clear();
+			revisions.addAll( fromAuditReader( reader -> reader.getRevisions( Department.class, departmentIds.get( 0 ) ) ) );
+			assertEquals( depth, revisions.size() );
+		}
+
+		private Long randomEmployee(Random random) {
+			return employeeIds.get( random.nextInt( employeeIds.size() ) );
+		}
+
+		private Number randomRevision(Random random) {
+			return revisions.get( random.nextInt( revisions.size() ) );
+		}
+	}
+
+	@Audited
+	@Entity(name = "Department")
+	public static class Department {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		private String name;
+
+		private BigDecimal budget = BigDecimal.ZERO;
+
+		@OneToMany(mappedBy = "department")
+		private List<Employee> employees = new ArrayList<>();
+
+		public Department() {
+		}
+
+		public Department(String name) {
+			this.name = name;
+		}
+	}
+
+	@Audited
+	@Entity(name = "Employee")
+	public static class Employee {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		private String name;
+
+		private BigDecimal salary = BigDecimal.ZERO;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Department department;
+
+		public Employee() {
+		}
+
+		public Employee(String name, Department department) {
+			this.name = name;
+			this.department = department;
+		}
+	}
+
+}
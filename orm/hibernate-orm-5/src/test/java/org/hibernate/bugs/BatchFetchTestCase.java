@@ -0,0 +1,238 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.loader.BatchFetchStyle;
+import org.hibernate.mapping.Collection;
+
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This template demonstrates how to compare the ways Hibernate ORM loads lazy associations, or report a regression:
+ * it walks trees of entities, level by level, initializing each lazy collection of children and each lazy owner,
+ * without batch fetching, with each batch fetch style (LEGACY, PADDED, DYNAMIC) and several batch sizes,
+ * then with subselect fetching.
+ * It reports the statements executed and the time taken by each walk, then a summary of all runs.
+ * <p>
+ * Tune it with the following system properties: {@code fetch.roots}, {@code fetch.breadth} (children per node),
+ * {@code fetch.depth} (levels below the roots) and {@code fetch.batch.sizes} (e.g. {@code 4,16,64}).
+ */
+@RunWith(Parameterized.class)
+public class BatchFetchTestCase {
+
+	private static final Logger log = Logger.getLogger( BatchFetchTestCase.class );
+
+	private static final int ROOTS = Integer.getInteger( "fetch.roots", 50 );
+
+	private static final int BREADTH = Integer.getInteger( "fetch.breadth", 4 );
+
+	private static final int DEPTH = Integer.getInteger( "fetch.depth", 3 );
+
+	private static final int[] BATCH_SIZES = Arrays.stream( System.getProperty( "fetch.batch.sizes", "4,16,64" ).split( "," ) )
+			.mapToInt( size -> Integer.parseInt( size.trim() ) )
+			.toArray();
+
+	private static final int NODES_PER_OWNER = 10;
+
+	// Each walk is repeated, and the fastest one is reported, to reduce the noise of JIT compilation and GC.
+	private static final int WALKS = 3;
+
+	private static final Map<String, String> SUMMARY = new LinkedHashMap<>();
+
+	// Hibernate ORM 5 has no setting for subselect fetching: this one only tells setup() to enable it on every collection.
+	private static final String SUBSELECT_FETCH = "test.subselect_fetch";
+
+	@Parameterized.Parameters(name = "{0}")
+	public static List<Object[]> parameters() {
+		List<Object[]> parameters = new ArrayList<>();
+		parameters.add( new Object[] { "no batch fetching", Collections.emptyMap() } );
+		for ( BatchFetchStyle style : BatchFetchStyle.values() ) {
+			for ( int batchSize : BATCH_SIZES ) {
+				Map<String, Object> settings = new HashMap<>();
+				settings.put( AvailableSettings.BATCH_FETCH_STYLE, style.name() );
+				settings.put( AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, String.valueOf( batchSize ) );
+				parameters.add( new Object[] { style + ", batch size " + batchSize, settings } );
+			}
+		}
+		// Only applies to collections: owners are loaded one by one.
+		parameters.add( new Object[] { "subselect fetching", Collections.singletonMap( SUBSELECT_FETCH, Boolean.TRUE.toString() ) } );
+		return parameters;
+	}
+
+	private final String fetching;
+
+	private final Map<String, Object> fetchSettings;
+
+	private SessionFactory sf;
+
+	public BatchFetchTestCase(String fetching, Map<String, Object> fetchSettings) {
+		this.fetching = fetching;
+		this.fetchSettings = fetchSettings;
+	}
+
+	@Before
+	public void setup() {
+		Map<String, Object> settings = new HashMap<>( fetchSettings );
+		settings.put( AvailableSettings.HBM2DDL_AUTO, "create-drop" );
+		// Logging metrics for each session would serialize the walks on the console.
+		settings.put( AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString() );
+
+		Metadata metadata = SessionFactoryCache.buildMetadata( settings, Owner.class, Node.class );
+		if ( settings.containsKey( SUBSELECT_FETCH ) ) {
+			// As @Fetch(FetchMode.SUBSELECT) would on each collection.
+			for ( Collection collection : metadata.getCollectionBindings() ) {
+				collection.setSubselectLoadable( true );
+				collection.getOwner().setSubselectLoadableCollections( true );
+			}
+		}
+		sf = metadata.buildSessionFactory();
+		try ( Session session = sf.openSession() ) {
+			session.beginTransaction();
+			insertTrees( session );
+			session.getTransaction().commit();
+		}
+	}
+
+	@After
+	public void cleanup() {
+		sf.close();
+	}
+
+	@AfterClass
+	public static void summary() {
+		StringBuilder sb = new StringBuilder( String.format( "Walks of %d trees of %d nodes, breadth %d, depth %d:%n",
+				ROOTS, nodes() / ROOTS, BREADTH, DEPTH ) );
+		sb.append( String.format( "%-25s %10s %10s%n", "fetching", "statements", "ms" ) );
+		SUMMARY.forEach( (fetching, results) -> sb.append( String.format( "%-25s %s%n", fetching, results ) ) );
+		log.info( sb );
+	}
+
+	@Test
+	public void walkTrees() {
+		long bestNanos = Long.MAX_VALUE;
+		int statements = 0;
+		for ( int i = 0; i < WALKS; i++ ) {
+			StatementRecorder.clear();
+			long start = System.nanoTime();
+			int visited = walk();
+			bestNanos = Math.min( bestNanos, System.nanoTime() - start );
+			statements = StatementRecorder.getStatements().size();
+			assertEquals( nodes(), visited );
+		}
+		log.infof( "%s: %d statements, %d ms", fetching, statements, TimeUnit.NANOSECONDS.toMillis( bestNanos ) );
+		SUMMARY.put( fetching, String.format( "%10d %10d", statements, TimeUnit.NANOSECONDS.toMillis( bestNanos ) ) );
+	}
+
+	/**
+	 * Loads the roots, then initializes the children and the owner of each node, one level after the other,
+	 * as the rendering of a tree view would.
+	 *
+	 * @return The number of nodes visited.
+	 */
+	private int walk() {
+		try ( Session session = sf.openSession() ) {
+			List<Node> level = session.createQuery( "from Node where parent is null order by id", Node.class ).getResultList();
+			int visited = 0;
+			while ( !level.isEmpty() ) {
+				List<Node> nextLevel = new ArrayList<>();
+				for ( Node node : level ) {
+					node.getOwner().getName();
+					nextLevel.addAll( node.getChildren() );
+				}
+				visited += level.size();
+				level = nextLevel;
+			}
+			return visited;
+		}
+	}
+
+	private static int nodes() {
+		int nodes = 0;
+		for ( int depth = 0, width = ROOTS; depth <= DEPTH; depth++, width *= BREADTH ) {
+			nodes += width;
+		}
+		return nodes;
+	}
+
+	private static void insertTrees(Session session) {
+		int owners = Math.max( 1, nodes() / NODES_PER_OWNER );
+		session.createNativeQuery( "insert into Owner (id, name) select x, 'owner ' || x from system_range(1, " + owners + ")" )
+				.executeUpdate();
+		// Nodes are numbered level by level: the children of node n of a level are nodes BREADTH * (n - 1) + 1 to BREADTH * n of the next.
+		int previousFirst = 0;
+		int first = 1;
+		for ( int depth = 0, width = ROOTS; depth <= DEPTH; depth++, width *= BREADTH ) {
+			String parent = depth == 0 ? "null" : previousFirst + " + (x - 1) / " + BREADTH;
+			session.createNativeQuery( "insert into Node (id, name, parent_id, owner_id)"
+					+ " select " + first + " + x - 1, 'node ' || x, " + parent + ", 1 + mod(x, " + owners + ") from system_range(1, " + width + ")" )
+					.executeUpdate();
+			previousFirst = first;
+			first += width;
+		}
+	}
+
+	@Entity(name = "Owner")
+	public static class Owner {
+
+		@Id
+		private Long id;
+
+		private String name;
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	@Entity(name = "Node")
+	public static class Node {
+
+		@Id
+		private Long id;
+
+		private String name;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Node parent;
+
+		@OneToMany(mappedBy = "parent")
+		private List<Node> children = new ArrayList<>();
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Owner owner;
+
+		public List<Node> getChildren() {
+			return children;
+		}
+
+		public Owner getOwner() {
+			return owner;
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Version;
+
+import org.hibernate.Session;
+import org.hibernate.StaleStateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This template demonstrates how to report a contention issue: it drives many threads, each opening its own sessions,
+ * against one shared SessionFactory, mixing reads with optimistically versioned writes to a few hot rows.
+ * <p>
+ * It reports the throughput, the p50/p99 latency of reads and writes, the optimistic lock failures,
+ * and the time spent waiting for one of the {@code hibernate.connection.pool_size} connections
+ * (see {@link RecordingConnectionProvider}). It also checks that versioning did not let any update get lost.
+ * Waits for locks, in Hibernate ORM or on the rows of the database, are not part of the connection wait:
+ * the ORM 6 template records them with Java Flight Recorder, which this Java 8 template cannot use.
+ * Tune it with the {@code load.threads}, {@code load.operations}, {@code load.write.ratio} and {@code load.accounts}
+ * system properties. {@link #virtualThreads()} only runs on Java 21 or later.
+ */
+public class ConcurrentLoadTestCase extends SharedSessionFactoryTestCase {
+
+	private static final int THREADS = Integer.getInteger( "load.threads", 16 );
+
+	private static final int OPERATIONS = Integer.getInteger( "load.operations", 20_000 );
+
+	private static final double WRITE_RATIO = Double.parseDouble( System.getProperty( "load.write.ratio", "0.2" ) );
+
+	// The fewer the accounts, the more optimistic lock failures.
+	private static final int ACCOUNTS = Integer.getInteger( "load.accounts", 100 );
+
+	@Override
+	protected Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Account.class };
+	}
+
+	@Override
+	protected void configure(Configuration configuration) {
+		super.configure( configuration );
+
+		// Logging metrics for each of the thousands of sessions would serialize threads on the console.
+		configuration.setProperty( AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString() );
+	}
+
+	@Test
+	public void platformThreads() throws Exception {
+		run( "platform", Executors.newFixedThreadPool( THREADS ) );
+	}
+
+	@Test
+	public void virtualThreads() throws Exception {
+		Assume.assumeTrue( "Virtual threads require Java 21", VirtualThreads.isAvailable() );
+		run( "virtual", VirtualThreads.newExecutor() );
+	}
+
+	private void run(String threadKind, ExecutorService executor) throws Exception {
+		inTransaction( session -> {
+			for ( long id = 1; id <= ACCOUNTS; id++ ) {
+				session.persist( new Account( id ) );
+			}
+		} );
+
+		long[] latencies = new long[OPERATIONS];
+		boolean[] writes = new boolean[OPERATIONS];
+		AtomicInteger nextOperation = new AtomicInteger();
+		AtomicLong committedWrites = new AtomicLong();
+		AtomicLong optimisticLockFailures = new AtomicLong();
+		RecordingConnectionProvider.clearAcquisitions();
+
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for ( int i = 0; i < THREADS; i++ ) {
+				workers.add( executor.submit( () -> {
+					for ( int operation; ( operation = nextOperation.getAndIncrement() ) < OPERATIONS; ) {
+						ThreadLocalRandom random = ThreadLocalRandom.current();
+						long id = 1 + random.nextInt( ACCOUNTS );
+						writes[operation] = random.nextDouble() < WRITE_RATIO;
+						long operationStart = System.nanoTime();
+						if ( writes[operation] ) {
+							if ( deposit( id ) ) {
+								committedWrites.incrementAndGet();
+							}
+							else {
+								optimisticLockFailures.incrementAndGet();
+							}
+						}
+						else {
+							read( id );
+						}
+						latencies[operation] = System.nanoTime() - operationStart;
+					}
+					return null;
+				} ) );
+			}
+			for ( Future<?> worker : workers ) {
+				// Rethrows the first unexpected failure.
+				worker.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long[] readLatencies = select( latencies, writes, false );
+		long[] writeLatencies = select( latencies, writes, true );
+		log.infof( "%d %s threads, %d operations in %d ms (%.0f/s): reads p50 %d us, p99 %d us; writes p50 %d us, p99 %d us;"
+						+ " %d optimistic lock failures out of %d writes; connection wait %d ms for %d acquisitions (max %d ms)",
+				THREADS, threadKind, OPERATIONS, millis( elapsed ), OPERATIONS * 1_000_000_000.0 / elapsed,
+				micros( percentile( readLatencies, 0.50 ) ), micros( percentile( readLatencies, 0.99 ) ),
+				micros( percentile( writeLatencies, 0.50 ) ), micros( percentile( writeLatencies, 0.99 ) ),
+				optimisticLockFailures.get(), writeLatencies.length,
+				millis( RecordingConnectionProvider.getWaitNanos() ), RecordingConnectionProvider.getAcquisitionCount(),
+				millis( RecordingConnectionProvider.getMaxWaitNanos() ) );
+
+		// Each committed deposit adds exactly 1: anything else is a lost update.
+		inTransaction( session -> assertEquals( committedWrites.get(),
+				(long) session.createQuery( "select sum(a.balance) from Account a", Long.class ).getSingleResult() ) );
+	}
+
+	private void read(long id) {
+		try ( Session session = openSession() ) {
+			session.beginTransaction();
+			session.find( Account.class, id );
+			// Many threads parsing the same query, as the query plan cache is meant for.
+			session.createQuery( "select count(a) from Account a where a.balance >= :balance", Long.class )
+					.setParameter( "balance", 0L )
+					.getSingleResult();
+			session.getTransaction().commit();
+		}
+	}
+
+	/**
+	 * @return Whether the deposit was committed, rather than rejected because of a concurrent update.
+	 */
+	private boolean deposit(long id) {
+		try ( Session session = openSession() ) {
+			session.beginTransaction();
+			try {
+				session.find( Account.class, id ).balance++;
+				session.getTransaction().commit();
+				return true;
+			}
+			catch (RuntimeException e) {
+				if ( session.getTransaction().isActive() ) {
+					session.getTransaction().rollback();
+				}
+				if ( isOptimisticLockFailure( e ) ) {
+					return false;
+				}
+				throw e;
+			}
+		}
+	}
+
+	private static boolean isOptimisticLockFailure(Throwable e) {
+		for ( Throwable cause = e; cause != null; cause = cause.getCause() ) {
+			if ( cause instanceof OptimisticLockException || cause instanceof StaleStateException ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long[] select(long[] latencies, boolean[] writes, boolean write) {
+		long[] selected = new long[latencies.length];
+		int count = 0;
+		for ( int i = 0; i < latencies.length; i++ ) {
+			if ( writes[i] == write ) {
+				selected[count++] = latencies[i];
+			}
+		}
+		selected = Arrays.copyOf( selected, count );
+		Arrays.sort( selected );
+		return selected;
+	}
+
+	private static long percentile(long[] sortedValues, double percentile) {
+		return sortedValues.length == 0 ? 0 : sortedValues[(int) Math.ceil( percentile * sortedValues.length ) - 1];
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros( nanos );
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis( nanos );
+	}
+
+	@Entity(name = "Account")
+	public static class Account {
+
+		@Id
+		private Long id;
+
+		@Version
+		private int version;
+
+		private long balance;
+
+		protected Account() {
+		}
+
+		public Account(Long id) {
+			this.id = id;
+		}
+	}
+
+}
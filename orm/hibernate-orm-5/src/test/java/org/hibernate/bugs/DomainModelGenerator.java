@@ -0,0 +1,184 @@
+package org.hibernate.bugs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ByteArrayClassLoader;
+import net.bytebuddy.dynamic.loading.ClassInjector;
+
+/**
+ * Generates annotated entity classes at test time, for problems that only show with large domain models,
+ * such as slow bootstrap, memory footprint or query plan compilation.
+ * <p>
+ * Each entity {@code EntityN} has basic fields of various types, and lazy many-to-one associations
+ * to the entities generated before it. Entities form inheritance hierarchies of {@code inheritanceDepth + 1} classes,
+ * mapped with the default single table strategy: only the root of each hierarchy declares an identifier.
+ * <p>
+ * To test with the generated classes, return them from {@code getAnnotatedClasses()}, e.g.:
+ * <pre>{@code
+ * private static final Class<?>[] ENTITIES = new DomainModelGenerator( "org.hibernate.bugs.generated" )
+ *         .entities( 500 ).associationFanOut( 3 ).inheritanceDepth( 2 ).load();
+ *
+ * protected Class[] getAnnotatedClasses() {
+ *     return ENTITIES;
+ * }
+ * }</pre>
+ * Generate them once, in a static field: classes generated again are different classes,
+ * for which {@link SessionFactoryCache} would build another SessionFactory.
+ * Generated entities have no accessors: use them through queries, or through reflection,
+ * as {@link GeneratedDomainModelTestCase} does.
+ * <p>
+ * Each template module must work once copied on its own, so the ORM, Envers and Search templates each have
+ * a copy of this class: those of Envers and Search also add {@code @Audited}, or {@code @Indexed} and field mappings.
+ */
+public class DomainModelGenerator {
+
+	private static final Class<?>[] FIELD_TYPES = { String.class, Long.class, Boolean.class, LocalDate.class };
+
+	private final String packageName;
+
+	private int entities = 10;
+
+	private int fieldsPerEntity = 5;
+
+	private int associationFanOut = 1;
+
+	private int inheritanceDepth = 0;
+
+	/**
+	 * @param packageName The package of the generated classes: use a package of its own,
+	 * so that the generated classes can be told apart, and scanned, easily.
+	 */
+	public DomainModelGenerator(String packageName) {
+		this.packageName = packageName;
+	}
+
+	public DomainModelGenerator entities(int entities) {
+		this.entities = entities;
+		return this;
+	}
+
+	public DomainModelGenerator fieldsPerEntity(int fieldsPerEntity) {
+		this.fieldsPerEntity = fieldsPerEntity;
+		return this;
+	}
+
+	/**
+	 * @param associationFanOut The number of many-to-one associations of each entity, each to a different entity
+	 * among those generated just before it.
+	 */
+	public DomainModelGenerator associationFanOut(int associationFanOut) {
+		this.associationFanOut = associationFanOut;
+		return this;
+	}
+
+	/**
+	 * @param inheritanceDepth The number of entity subclasses below each root entity: 0 for no inheritance.
+	 */
+	public DomainModelGenerator inheritanceDepth(int inheritanceDepth) {
+		this.inheritanceDepth = inheritanceDepth;
+		return this;
+	}
+
+	/**
+	 * @return The bytecode of the generated classes, by class name, in generation order: superclasses first.
+	 */
+	public Map<String, byte[]> generate() {
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		List<TypeDescription> generated = new ArrayList<>();
+		for ( int i = 1; i <= entities; i++ ) {
+			String simpleName = "Entity" + i;
+			boolean root = ( i - 1 ) % ( inheritanceDepth + 1 ) == 0;
+			DynamicType.Builder<?> builder = new ByteBuddy()
+					.subclass( root ? TypeDescription.ForLoadedType.of( Object.class ) : generated.get( i - 2 ) )
+					.name( packageName + "." + simpleName )
+					.annotateType( AnnotationDescription.Builder.ofType( Entity.class ).define( "name", simpleName ).build() );
+			if ( root ) {
+				builder = builder.defineField( "id", Long.class, Visibility.PRIVATE )
+						.annotateField( AnnotationDescription.Builder.ofType( Id.class ).build() );
+			}
+			// Subclasses share the table of their root: field names, hence column names, must differ from one entity to the next.
+			for ( int field = 1; field <= fieldsPerEntity; field++ ) {
+				builder = builder.defineField( "entity" + i + "Field" + field, FIELD_TYPES[field % FIELD_TYPES.length], Visibility.PRIVATE );
+			}
+			for ( int association = 1; association <= Math.min( associationFanOut, i - 1 ); association++ ) {
+				builder = builder.defineField( "entity" + i + "Association" + association, generated.get( i - 1 - association ), Visibility.PRIVATE )
+						.annotateField( AnnotationDescription.Builder.ofType( ManyToOne.class ).define( "fetch", FetchType.LAZY ).build() );
+			}
+			DynamicType.Unloaded<?> type = builder.make();
+			classes.put( type.getTypeDescription().getName(), type.getBytes() );
+			generated.add( type.getTypeDescription() );
+		}
+		return classes;
+	}
+
+	/**
+	 * Defines the generated classes in the class loader of the tests, where Hibernate finds them by name
+	 * like any other entity class. A class cannot be defined twice: generate each model in a package of its own.
+	 *
+	 * @return The generated classes, ready to return from {@code getAnnotatedClasses()}.
+	 */
+	public Class<?>[] load() {
+		Map<String, byte[]> classes = generate();
+		Map<String, Class<?>> loaded = new ClassInjector.UsingReflection( DomainModelGenerator.class.getClassLoader() )
+				.injectRaw( classes );
+		return classes.keySet().stream().map( loaded::get ).toArray( Class<?>[]::new );
+	}
+
+	/**
+	 * @param classes The bytecode of classes, by class name, as returned by {@link #generate()}.
+	 * @return The classes, loaded by a new class loader: Hibernate only finds them by name
+	 * if that class loader is made available to it, e.g. as the context class loader.
+	 */
+	public static Class<?>[] load(Map<String, byte[]> classes) {
+		ClassLoader classLoader = new ByteArrayClassLoader( DomainModelGenerator.class.getClassLoader(), classes );
+		Class<?>[] loaded = new Class<?>[classes.size()];
+		int i = 0;
+		try {
+			for ( String name : classes.keySet() ) {
+				loaded[i++] = classLoader.loadClass( name );
+			}
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException( e );
+		}
+		return loaded;
+	}
+
+	/**
+	 * Writes class files, as a compiler would, so that they can be scanned.
+	 *
+	 * @param classes The bytecode of classes, by class name, as returned by {@link #generate()}.
+	 * @param directory The root of the class files.
+	 */
+	public static void save(Map<String, byte[]> classes, Path directory) {
+		try {
+			for ( Map.Entry<String, byte[]> entry : classes.entrySet() ) {
+				Path file = directory.resolve( entry.getKey().replace( '.', '/' ) + ".class" );
+				Files.createDirectories( file.getParent() );
+				Files.write( file, entry.getValue() );
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+}
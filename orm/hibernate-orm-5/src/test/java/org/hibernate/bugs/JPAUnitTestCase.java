@@ -1,9 +1,13 @@
 package org.hibernate.bugs;
 
+import java.util.Collections;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import org.hibernate.cfg.AvailableSettings;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,12 +21,16 @@ public class JPAUnitTestCase {
 
 	@Before
 	public void init() {
-		entityManagerFactory = Persistence.createEntityManagerFactory( "templatePU" );
+		// The EntityManagerFactory is built once, then shared with every test using the same persistence unit.
+		entityManagerFactory = SessionFactoryCache.getOrBuild( "templatePU", url ->
+				Persistence.createEntityManagerFactory( "templatePU", Collections.singletonMap( AvailableSettings.URL, url ) ) );
+		StatementRecorder.clear();
 	}
 
 	@After
 	public void destroy() {
-		entityManagerFactory.close();
+		StatementRecorder.dump();
+		SessionFactoryCache.truncate( entityManagerFactory );
 	}
 
 	// Entities are auto-discovered, so just add them anywhere on class-path
@@ -0,0 +1,267 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Version;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This template demonstrates how to report a JDBC batching regression: it inserts, then updates, a parent/child graph
+ * under a matrix of batch sizes and statement ordering settings, and reports rows/s and JDBC round trips,
+ * as recorded by {@link StatementRecorder}.
+ * <p>
+ * It covers the cases where batching is known to degrade: a versioned entity ({@link Parent}),
+ * and, in {@link #bulkWriteWithIdentityGeneration()}, an entity with IDENTITY generation ({@link IdentityChild}).
+ * Set the {@code batching.parents} system property to change the size of the graph.
+ */
+@RunWith(Parameterized.class)
+public class JdbcBatchingTestCase {
+
+	private static final Logger log = Logger.getLogger( JdbcBatchingTestCase.class );
+
+	private static final int PARENTS = Integer.getInteger( "batching.parents", 500 );
+
+	private static final int CHILDREN_PER_PARENT = 4;
+
+	@Parameterized.Parameters(name = "batch_size={0}, order_inserts={1}, order_updates={2}")
+	public static List<Object[]> parameters() {
+		List<Object[]> parameters = new ArrayList<>();
+		for ( int batchSize : new int[] { 1, 10, 50 } ) {
+			for ( boolean orderInserts : new boolean[] { false, true } ) {
+				for ( boolean orderUpdates : new boolean[] { false, true } ) {
+					parameters.add( new Object[] { batchSize, orderInserts, orderUpdates } );
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private final int batchSize;
+
+	private final boolean orderInserts;
+
+	private final boolean orderUpdates;
+
+	private SessionFactory sf;
+
+	public JdbcBatchingTestCase(int batchSize, boolean orderInserts, boolean orderUpdates) {
+		this.batchSize = batchSize;
+		this.orderInserts = orderInserts;
+		this.orderUpdates = orderUpdates;
+	}
+
+	@Before
+	public void setup() {
+		Map<String, Object> settings = new HashMap<>();
+		settings.put( AvailableSettings.HBM2DDL_AUTO, "create-drop" );
+		settings.put( AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf( batchSize ) );
+		settings.put( AvailableSettings.ORDER_INSERTS, String.valueOf( orderInserts ) );
+		settings.put( AvailableSettings.ORDER_UPDATES, String.valueOf( orderUpdates ) );
+
+		// Each combination of settings is only used once: no need to keep the SessionFactory around.
+		sf = SessionFactoryCache.build( settings, Parent.class, Child.class, IdentityChild.class );
+	}
+
+	@After
+	public void cleanup() {
+		sf.close();
+	}
+
+	@Test
+	public void bulkWrite() {
+		Phase insert = insert( false );
+		Phase update = update();
+		log.infof( "batch_size=%d, order_inserts=%b, order_updates=%b: %s, %s", batchSize, orderInserts, orderUpdates, insert, update );
+
+		int children = PARENTS * CHILDREN_PER_PARENT;
+		assertEquals( PARENTS + children, insert.rows );
+		assertEquals( PARENTS + children, update.rows );
+		if ( orderInserts ) {
+			assertBatched( insert, "insert into Parent ", PARENTS );
+			assertBatched( insert, "insert into Child ", children );
+		}
+		if ( orderUpdates ) {
+			// Versioned entities are only batched with hibernate.jdbc.batch_versioned_data, see resources/hibernate.properties.
+			assertBatched( update, "update Parent ", PARENTS );
+			assertBatched( update, "update Child ", children );
+		}
+	}
+
+	@Test
+	public void bulkWriteWithIdentityGeneration() {
+		Phase insert = insert( true );
+		log.infof( "batch_size=%d, order_inserts=%b, order_updates=%b, with IDENTITY generation: %s", batchSize, orderInserts, orderUpdates, insert );
+
+		assertEquals( PARENTS + PARENTS * CHILDREN_PER_PARENT + PARENTS, insert.rows );
+		// IDENTITY generation executes each insert right away, along with the queued inserts it may depend on:
+		// compare the round trips for Parent and Child with those of bulkWrite().
+		assertEquals( PARENTS, insert.roundTrips( "insert into IdentityChild " ) );
+	}
+
+	private Phase insert(boolean withIdentityChildren) {
+		StatementRecorder.clear();
+		long start = System.nanoTime();
+		try ( Session session = sf.openSession() ) {
+			session.beginTransaction();
+			// Interleave entity types, as an application building a graph would: only ordering can restore batches.
+			for ( int i = 0; i < PARENTS; i++ ) {
+				Parent parent = new Parent( "parent" + i );
+				session.persist( parent );
+				for ( int j = 0; j < CHILDREN_PER_PARENT; j++ ) {
+					session.persist( new Child( parent, "child" + j ) );
+				}
+				if ( withIdentityChildren ) {
+					session.persist( new IdentityChild( parent, "identity child" ) );
+				}
+			}
+			session.getTransaction().commit();
+		}
+		return new Phase( "insert", System.nanoTime() - start );
+	}
+
+	private Phase update() {
+		StatementRecorder.clear();
+		long start = System.nanoTime();
+		try ( Session session = sf.openSession() ) {
+			session.beginTransaction();
+			// Loading children along with their parent interleaves both types in the persistence context, hence in the flush.
+			List<Child> children = session.createQuery( "select c from Child c join fetch c.parent p order by p.id, c.id", Child.class )
+					.getResultList();
+			for ( Child child : children ) {
+				child.name += " updated";
+				if ( !child.parent.name.endsWith( " updated" ) ) {
+					child.parent.name += " updated";
+				}
+			}
+			session.getTransaction().commit();
+		}
+		return new Phase( "update", System.nanoTime() - start );
+	}
+
+	private void assertBatched(Phase phase, String sqlPrefix, int rows) {
+		long expected = ( rows + batchSize - 1 ) / batchSize;
+		long actual = phase.roundTrips( sqlPrefix );
+		assertTrue( String.format( "%s: %d rows took %d JDBC round trips, expected %d with batch size %d", sqlPrefix, rows, actual, expected, batchSize ),
+				actual <= expected );
+	}
+
+	/**
+	 * The statements recorded during one transaction.
+	 */
+	private static final class Phase {
+
+		private final String name;
+
+		private final long nanos;
+
+		private final List<StatementRecorder.RecordedStatement> statements;
+
+		private final long rows;
+
+		private Phase(String name, long nanos) {
+			this.name = name;
+			this.nanos = nanos;
+			this.statements = StatementRecorder.getStatements();
+			this.rows = statements.stream()
+					.filter( statement -> statement.getSql().startsWith( name ) )
+					.mapToLong( StatementRecorder.RecordedStatement::getRowsAffected )
+					.filter( count -> count > 0 )
+					.sum();
+		}
+
+		private long roundTrips(String sqlPrefix) {
+			return statements.stream().filter( statement -> statement.getSql().startsWith( sqlPrefix ) ).count();
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%s %d rows in %d JDBC round trips (%.0f rows/s)",
+					name, rows, statements.size(), rows * 1_000_000_000.0 / nanos );
+		}
+	}
+
+	@Entity(name = "Parent")
+	public static class Parent {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.SEQUENCE)
+		private Long id;
+
+		@Version
+		private int version;
+
+		private String name;
+
+		protected Parent() {
+		}
+
+		public Parent(String name) {
+			this.name = name;
+		}
+	}
+
+	@Entity(name = "Child")
+	public static class Child {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.SEQUENCE)
+		private Long id;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Parent parent;
+
+		private String name;
+
+		protected Child() {
+		}
+
+		public Child(Parent parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+	}
+
+	@Entity(name = "IdentityChild")
+	public static class IdentityChild {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.IDENTITY)
+		private Long id;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Parent parent;
+
+		private String name;
+
+		protected IdentityChild() {
+		}
+
+		public IdentityChild(Parent parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+	}
+
+}
@@ -1,9 +1,15 @@
 package org.hibernate.bugs;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.hibernate.SessionFactory;
-import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -17,18 +23,33 @@ public class ORMStandaloneTestCase {
 
 	@Before
 	public void setup() {
-		StandardServiceRegistryBuilder srb = new StandardServiceRegistryBuilder()
-			// Add in any settings that are specific to your test. See resources/hibernate.properties for the defaults.
-			.applySetting( "hibernate.show_sql", "true" )
-			.applySetting( "hibernate.format_sql", "true" )
-			.applySetting( "hibernate.hbm2ddl.auto", "update" );
+		Map<String, Object> settings = new HashMap<>();
+		// Add in any settings that are specific to your test. See resources/hibernate.properties for the defaults.
+		settings.put( "hibernate.hbm2ddl.auto", "update" );
 
-		Metadata metadata = new MetadataSources( srb.build() )
+		List<Class<?>> annotatedClasses = Arrays.asList(
 		// Add your entities here.
-		//	.addAnnotatedClass( Foo.class )
-			.buildMetadata();
+		//	Foo.class
+		);
+
+		// The SessionFactory is built once, then shared with every test using the same settings and entities.
+		sf = SessionFactoryCache.getOrBuild( Arrays.asList( settings, annotatedClasses ), url -> {
+			StandardServiceRegistryBuilder srb = new StandardServiceRegistryBuilder()
+				.applySettings( settings )
+				.applySetting( AvailableSettings.URL, url );
+
+			MetadataSources metadataSources = new MetadataSources( srb.build() );
+			annotatedClasses.forEach( metadataSources::addAnnotatedClass );
+
+			return metadataSources.buildMetadata().buildSessionFactory();
+		} );
+		StatementRecorder.clear();
+	}
 
-		sf = metadata.buildSessionFactory();
+	@After
+	public void cleanup() {
+		StatementRecorder.dump();
+		SessionFactoryCache.truncate( sf );
 	}
 
 	// Add your tests, using standard JUnit.
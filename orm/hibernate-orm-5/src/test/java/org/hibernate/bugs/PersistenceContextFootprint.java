@@ -0,0 +1,97 @@
+package org.hibernate.bugs;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.engine.spi.SessionImplementor;
+
+/**
+ * Measures the heap retained by the entities a Session or EntityManager loads, along with its persistence context:
+ * entity entries, loaded-state snapshots, proxies, collections, and the entity instances themselves.
+ * <p>
+ * Typical usage, from a test of ORMUnitTestCase or JPAUnitTestCase:
+ * <pre>{@code
+ * PersistenceContextFootprint footprint = PersistenceContextFootprint.measure( session,
+ *         s -> s.createQuery( "from Book", Book.class ).getResultList() );
+ * log.info( footprint );
+ * }</pre>
+ * The heap is compared, by class, right before and right after {@code load}, with {@link HeapHistogram}:
+ * {@code load} must not keep references to what it loads, and must not allocate anything else that outlives it.
+ * Load thousands of entities, so that the one-off allocations of the first query (plans, caches) do not count.
+ * <p>
+ * With bytecode enhancement, the targets of lazy associations are managed entities themselves, instead of proxies:
+ * compare bytes per loaded entity, rather than {@link #getBytesPerEntity()}, with and without enhancement.
+ */
+public final class PersistenceContextFootprint {
+
+	private static final int TOP_CLASSES = 15;
+
+	// The in-memory H2 database of the templates shares the heap: its row caches are not part of the footprint.
+	private static final String DATABASE_PACKAGE = "org.h2.";
+
+	private final int managedEntities;
+
+	private final HeapHistogram retained;
+
+	private PersistenceContextFootprint(int managedEntities, HeapHistogram retained) {
+		this.managedEntities = managedEntities;
+		this.retained = retained;
+	}
+
+	/**
+	 * @param entityManager An open Session or EntityManager: it must still be open, and not cleared, after {@code load}.
+	 * @param load Loads entities into {@code entityManager}.
+	 */
+	public static <T extends EntityManager> PersistenceContextFootprint measure(T entityManager, Consumer<T> load) {
+		SessionImplementor session = entityManager.unwrap( SessionImplementor.class );
+		int managedBefore = session.getPersistenceContextInternal().getNumberOfManagedEntities();
+		// The histogram taken before loading is still on the heap after: find out how much heap one histogram takes.
+		HeapHistogram empty = HeapHistogram.take();
+		HeapHistogram before = HeapHistogram.take();
+		HeapHistogram histogramOverhead = before.minus( empty );
+		load.accept( entityManager );
+		HeapHistogram after = HeapHistogram.take();
+		int managed = session.getPersistenceContextInternal().getNumberOfManagedEntities() - managedBefore;
+		return new PersistenceContextFootprint( managed, after.minus( before ).minus( histogramOverhead ).without( DATABASE_PACKAGE ) );
+	}
+
+	/**
+	 * @return The number of entities {@code load} added to the persistence context.
+	 */
+	public int getManagedEntities() {
+		return managedEntities;
+	}
+
+	public long getRetainedBytes() {
+		return retained.getTotalBytes();
+	}
+
+	/**
+	 * @return The retained bytes per managed entity, or 0 if no entity was loaded.
+	 */
+	public long getBytesPerEntity() {
+		return managedEntities == 0 ? 0 : getRetainedBytes() / managedEntities;
+	}
+
+	/**
+	 * @return The retained instances, by class, the most bytes first.
+	 */
+	public List<HeapHistogram.Entry> getRetainedClasses() {
+		return retained.getEntries();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder( String.format( "%,d managed entities retain %,d bytes, %,d bytes per entity, mostly:%n",
+				managedEntities, getRetainedBytes(), getBytesPerEntity() ) );
+		sb.append( String.format( "%16s %14s  %s%n", "instances/entity", "bytes", "class" ) );
+		for ( HeapHistogram.Entry entry : getRetainedClasses().subList( 0, Math.min( TOP_CLASSES, getRetainedClasses().size() ) ) ) {
+			sb.append( String.format( "%16.2f %,14d  %s%n", managedEntities == 0 ? 0.0 : (double) entry.getInstances() / managedEntities,
+					entry.getBytes(), entry.getClassName() ) );
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.hibernate.bugs;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import org.hibernate.Session;
+
+import org.jboss.logging.Logger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This template demonstrates how to report a memory footprint regression of large sessions, such as those of batch jobs:
+ * it loads many entities into one session, and reports the heap they retain along with the persistence context,
+ * per entity and by class, as measured by {@link PersistenceContextFootprint}.
+ * <p>
+ * It runs with the bytecode enhancement options of the hibernate-enhance-maven-plugin in pom.xml, none by default:
+ * enable dirty tracking and lazy initialization there, and run it again, to compare. Enhanced entities keep their
+ * entity entry themselves.
+ * Set the {@code footprint.entities} system property to change the number of entities loaded,
+ * and {@code footprint.max.bytes.per.entity} to make the test fail above a given footprint per loaded entity.
+ */
+public class PersistenceContextFootprintTestCase extends SharedSessionFactoryTestCase {
+
+	private static final Logger log = Logger.getLogger( PersistenceContextFootprintTestCase.class );
+
+	private static final int ENTITIES = Integer.getInteger( "footprint.entities", 20_000 );
+
+	private static final long MAX_BYTES_PER_ENTITY = Long.getLong( "footprint.max.bytes.per.entity", Long.MAX_VALUE );
+
+	private static final int ORDERS_PER_CUSTOMER = 10;
+
+	@Override
+	protected Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Customer.class, PurchaseOrder.class };
+	}
+
+	@Test
+	public void largeSession() {
+		int customers = Math.max( 1, ENTITIES / ORDERS_PER_CUSTOMER );
+		inTransaction( session -> {
+			session.createNativeQuery( "insert into Customer (id, name) select x, 'customer ' || x from system_range(1, " + customers + ")" )
+					.executeUpdate();
+			session.createNativeQuery( "insert into PurchaseOrder (id, reference, amount, placedOn, customer_id)"
+					+ " select x, 'order ' || x, x / 100.0, dateadd(day, mod(x, 1000), date '2020-01-01'), 1 + mod(x, " + customers + ")"
+					+ " from system_range(1, " + ENTITIES + ")" )
+					.executeUpdate();
+		} );
+
+		// Query plans and other one-off allocations must not count in the footprint of the entities.
+		inSession( session -> session.createQuery( "from PurchaseOrder", PurchaseOrder.class ).setMaxResults( 10 ).getResultList() );
+
+		try ( Session session = openSession() ) {
+			session.beginTransaction();
+			// The customers of the orders are lazy: they only get a proxy each.
+			PersistenceContextFootprint footprint = PersistenceContextFootprint.measure( session,
+					s -> s.createQuery( "from PurchaseOrder", PurchaseOrder.class ).getResultList() );
+			// Enhanced lazy customers are managed entities too: count bytes per order, to compare runs.
+			long bytesPerOrder = footprint.getRetainedBytes() / ENTITIES;
+			log.infof( "%,d bytes per order, %s", bytesPerOrder, footprint );
+			assertTrue( footprint.getManagedEntities() >= ENTITIES );
+			assertTrue( bytesPerOrder + " bytes per order, more than " + MAX_BYTES_PER_ENTITY,
+					bytesPerOrder <= MAX_BYTES_PER_ENTITY );
+			session.getTransaction().rollback();
+		}
+	}
+
+	@Entity(name = "Customer")
+	public static class Customer {
+
+		@Id
+		private Long id;
+
+		private String name;
+	}
+
+	@Entity(name = "PurchaseOrder")
+	public static class PurchaseOrder {
+
+		@Id
+		private Long id;
+
+		private String reference;
+
+		private BigDecimal amount;
+
+		private LocalDate placedOn;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Customer customer;
+	}
+
+}
@@ -0,0 +1,209 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.CollectionStatistics;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.Statistics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This template demonstrates how to report a second-level cache performance issue: after loading a data set,
+ * it runs a read-heavy, skewed workload against the entity, collection and query caches, and reports
+ * the hit ratio, the evictions and the latency of each lookup.
+ * <p>
+ * By default, the cache is the map-based CachingRegionFactory of hibernate-testing, which never evicts anything.
+ * Run with {@code mvn verify -Pjcache -Djcache.maximum.size=...} to use a size-bounded Caffeine JCache instead.
+ */
+public class SecondLevelCacheTestCase extends SharedSessionFactoryTestCase {
+
+	private static final int PRODUCTS = Integer.getInteger( "l2cache.products", 2_000 );
+
+	private static final int REVIEWS_PER_PRODUCT = 3;
+
+	private static final int LOOKUPS = Integer.getInteger( "l2cache.lookups", 10_000 );
+
+	private static final double SKEW = 3;
+
+	@Override
+	protected Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Product.class, Review.class };
+	}
+
+	@Override
+	protected void configure(Configuration configuration) {
+		super.configure( configuration );
+
+		configuration.setProperty( AvailableSettings.USE_SECOND_LEVEL_CACHE, Boolean.TRUE.toString() );
+		configuration.setProperty( AvailableSettings.USE_QUERY_CACHE, Boolean.TRUE.toString() );
+		configuration.setProperty( AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString() );
+	}
+
+	@Test
+	public void readHeavy() {
+		inTransaction( session -> {
+			for ( long id = 1; id <= PRODUCTS; id++ ) {
+				Product product = new Product( id, "product" + id );
+				session.persist( product );
+				for ( int i = 0; i < REVIEWS_PER_PRODUCT; i++ ) {
+					session.persist( new Review( product, "review" + i ) );
+				}
+			}
+		} );
+		sessionFactory().getCache().evictAllRegions();
+		Statistics statistics = sessionFactory().getStatistics();
+		Random random = new Random( 0 );
+
+		statistics.clear();
+		long[] latencies = lookups( random, (session, id) -> {
+			long start = System.nanoTime();
+			assertNotNull( session.find( Product.class, id ) );
+			return System.nanoTime() - start;
+		} );
+		EntityStatistics entityStatistics = statistics.getEntityStatistics( Product.class.getName() );
+		report( "entity", latencies, entityStatistics.getCacheHitCount(), entityStatistics.getCacheMissCount(),
+				entityStatistics.getCachePutCount(), resident( id -> sessionFactory().getCache().containsEntity( Product.class, id ) ) );
+
+		String reviews = Product.class.getName() + ".reviews";
+		statistics.clear();
+		latencies = lookups( random, (session, id) -> {
+			Product product = session.find( Product.class, id );
+			long start = System.nanoTime();
+			Hibernate.initialize( product.reviews );
+			return System.nanoTime() - start;
+		} );
+		CollectionStatistics collectionStatistics = statistics.getCollectionStatistics( reviews );
+		report( "collection", latencies, collectionStatistics.getCacheHitCount(), collectionStatistics.getCacheMissCount(),
+				collectionStatistics.getCachePutCount(), resident( id -> sessionFactory().getCache().containsCollection( reviews, id ) ) );
+
+		statistics.clear();
+		latencies = lookups( random, (session, id) -> {
+			long start = System.nanoTime();
+			session.createQuery( "from Review r where r.product.id = :id", Review.class )
+					.setParameter( "id", id )
+					.setCacheable( true )
+					.getResultList();
+			return System.nanoTime() - start;
+		} );
+		// Query cache keys cannot be enumerated: evictions are unknown.
+		report( "query", latencies, statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(),
+				statistics.getQueryCachePutCount(), -1 );
+	}
+
+	private long[] lookups(Random random, Lookup lookup) {
+		long[] latencies = new long[LOOKUPS];
+		for ( int i = 0; i < LOOKUPS; i++ ) {
+			// A few products are looked up much more often than the others, as in most applications.
+			long id = 1 + (long) ( PRODUCTS * Math.pow( random.nextDouble(), SKEW ) );
+			// One session per lookup, as in one request per lookup: a session does not see cache entries put after it started.
+			try ( Session session = openSession() ) {
+				session.beginTransaction();
+				latencies[i] = lookup.execute( session, id );
+				session.getTransaction().commit();
+			}
+		}
+		return latencies;
+	}
+
+	/**
+	 * @param resident The number of entries left in the cache, or -1 if unknown.
+	 */
+	private void report(String cache, long[] latencies, long hits, long misses, long puts, long resident) {
+		Arrays.sort( latencies );
+		log.infof( "%s cache: %d lookups, hit ratio %.3f (%d hits, %d misses, %d puts), %s evictions, latency p50 %d us, p99 %d us, max %d us",
+				cache, latencies.length, hits / (double) Math.max( 1, hits + misses ), hits, misses, puts,
+				// Every miss puts an entry: those no longer in the cache were evicted.
+				resident < 0 ? "unknown" : String.valueOf( puts - resident ),
+				micros( latencies[latencies.length / 2] ), micros( latencies[latencies.length * 99 / 100] ), micros( latencies[latencies.length - 1] ) );
+		assertTrue( cache + " cache was never hit", hits > 0 );
+	}
+
+	/**
+	 * @return How many products have an entry in the cache, according to {@code contains}.
+	 */
+	private static long resident(LongPredicate contains) {
+		return LongStream.rangeClosed( 1, PRODUCTS ).filter( contains ).count();
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros( nanos );
+	}
+
+	private interface Lookup {
+		/**
+		 * @return The latency of the lookup, in nanoseconds.
+		 */
+		long execute(Session session, long productId);
+	}
+
+	@Entity(name = "Product")
+	@Cacheable
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
+	public static class Product {
+
+		@Id
+		private Long id;
+
+		private String name;
+
+		@OneToMany(mappedBy = "product")
+		@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product.reviews")
+		private List<Review> reviews = new ArrayList<>();
+
+		protected Product() {
+		}
+
+		public Product(Long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	@Entity(name = "Review")
+	@Cacheable
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "review")
+	public static class Review {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Product product;
+
+		private String text;
+
+		protected Review() {
+		}
+
+		public Review(Product product, String text) {
+			this.product = product;
+			this.text = text;
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package org.hibernate.bugs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import org.hibernate.boot.registry.BootstrapServiceRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import org.hibernate.testing.junit4.BaseCoreFunctionalTestCase;
+
+/**
+ * A drop-in replacement for {@link BaseCoreFunctionalTestCase} that shares one SessionFactory between all test classes
+ * of the JVM declaring the same annotated classes, mappings and {@link #configure(Configuration)} settings.
+ * <p>
+ * The schema is created once per SessionFactory, then emptied by truncation after each test.
+ * If your test customizes the bootstrap through other hooks, make sure {@link #sessionFactoryKey(Properties)}
+ * reflects it, or extend {@link BaseCoreFunctionalTestCase} directly.
+ */
+public abstract class SharedSessionFactoryTestCase extends BaseCoreFunctionalTestCase {
+
+	private Object sharedSessionFactoryKey;
+
+	private SessionFactoryImplementor sharedSessionFactory;
+
+	@Override
+	protected void buildSessionFactory(Consumer<Configuration> configurationAdapter) {
+		if ( configurationAdapter != null ) {
+			// An ad-hoc configuration cannot be compared with others: build a SessionFactory for this test only.
+			super.buildSessionFactory( configurationAdapter );
+			return;
+		}
+
+		Properties properties;
+		BootstrapServiceRegistry bootRegistry = buildBootstrapServiceRegistry();
+		try {
+			properties = constructAndConfigureConfiguration( bootRegistry ).getProperties();
+		}
+		finally {
+			bootRegistry.close();
+		}
+
+		sharedSessionFactoryKey = sessionFactoryKey( properties );
+		sharedSessionFactory = SessionFactoryCache.getOrBuild(
+				sharedSessionFactoryKey,
+				properties.getProperty( AvailableSettings.URL ),
+				url -> {
+					super.buildSessionFactory( configuration -> configuration.setProperty( AvailableSettings.URL, url ) );
+					return super.sessionFactory();
+				}
+		);
+	}
+
+	@Override
+	protected Configuration constructConfiguration(BootstrapServiceRegistry bootstrapServiceRegistry) {
+		Configuration configuration = super.constructConfiguration( bootstrapServiceRegistry );
+		// BaseCoreFunctionalTestCase forces its map-based CachingRegionFactory:
+		// use the one from resources/hibernate.properties, or from the "jcache" Maven profile, instead.
+		String regionFactory = Environment.getProperties().getProperty( AvailableSettings.CACHE_REGION_FACTORY );
+		if ( regionFactory != null ) {
+			configuration.setProperty( AvailableSettings.CACHE_REGION_FACTORY, regionFactory );
+		}
+		return configuration;
+	}
+
+	/**
+	 * @param properties The settings resulting from {@link #configure(Configuration)}.
+	 * @return A key identifying the SessionFactory this test needs: tests with equal keys share their SessionFactory.
+	 */
+	protected Object sessionFactoryKey(Properties properties) {
+		return Arrays.asList(
+				asList( getAnnotatedClasses() ),
+				asList( getMappings() ),
+				getBaseForMappings(),
+				asList( getAnnotatedPackages() ),
+				getCacheConcurrencyStrategy(),
+				new HashMap<>( properties )
+		);
+	}
+
+	private static List<Object> asList(Object[] array) {
+		return array == null ? Collections.emptyList() : Arrays.asList( array );
+	}
+
+	@Override
+	protected SessionFactoryImplementor sessionFactory() {
+		return sharedSessionFactory != null ? sharedSessionFactory : super.sessionFactory();
+	}
+
+	@Override
+	protected void rebuildSessionFactory(Consumer<Configuration> configurationAdapter) {
+		if ( sharedSessionFactoryKey == null ) {
+			super.rebuildSessionFactory( configurationAdapter );
+			return;
+		}
+		// The shared SessionFactory may be in a bad state: make sure nobody else gets it.
+		SessionFactoryCache.evict( sharedSessionFactoryKey );
+		sharedSessionFactoryKey = null;
+		sharedSessionFactory = null;
+		buildSessionFactory( configurationAdapter );
+	}
+
+	@Override
+	protected void releaseSessionFactory() {
+		if ( sharedSessionFactoryKey == null ) {
+			super.releaseSessionFactory();
+		}
+		// Otherwise, SessionFactoryCache closes the shared SessionFactory on JVM shutdown.
+	}
+
+	@Override
+	protected boolean isCleanupTestDataRequired() {
+		return true;
+	}
+
+	@Override
+	protected void cleanupTestData() throws Exception {
+		SessionFactoryCache.truncate( sessionFactory() );
+	}
+
+}
@@ -0,0 +1,224 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Keeps the last JDBC statements executed through {@link RecordingConnectionProvider} in a lock-free ring buffer,
+ * so that tests can look at the SQL they trigger without the cost of {@code hibernate.show_sql} distorting timings.
+ * <p>
+ * Typical usage: call {@link #clear()} at the beginning of a test, then {@link #getStatements()} for assertions
+ * or {@link #dump()} for a per-statement summary and a latency histogram.
+ * The buffer holds the last 65536 statements by default; set the {@code statement.recorder.capacity}
+ * system property to change that.
+ */
+public final class StatementRecorder {
+
+	private static final Logger log = Logger.getLogger( StatementRecorder.class );
+
+	private static final int CAPACITY = Integer.highestOneBit( Math.max( 1, Integer.getInteger( "statement.recorder.capacity", 1 << 16 ) ) );
+
+	private static final int MAX_NORMALIZED_SQL = 10_000;
+
+	private static final Pattern WHITESPACE = Pattern.compile( "\\s+" );
+
+	private static final Pattern LITERAL = Pattern.compile( "'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b" );
+
+	private static final AtomicReferenceArray<RecordedStatement> BUFFER = new AtomicReferenceArray<>( CAPACITY );
+
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	private static final Map<String, String> NORMALIZED_SQL = new ConcurrentHashMap<>();
+
+	private static volatile long start;
+
+	private StatementRecorder() {
+	}
+
+	static void record(String sql, int bindCount, int batchSize, long nanos, long rowsAffected) {
+		long sequence = SEQUENCE.getAndIncrement();
+		BUFFER.set( (int) ( sequence & ( CAPACITY - 1 ) ),
+				new RecordedStatement( sequence, normalize( sql ), bindCount, batchSize, nanos, rowsAffected ) );
+	}
+
+	/**
+	 * Forgets the statements recorded so far.
+	 */
+	public static void clear() {
+		start = SEQUENCE.get();
+	}
+
+	/**
+	 * @return The statements recorded since the last {@link #clear()}, oldest first,
+	 * limited to the capacity of the buffer.
+	 */
+	public static List<RecordedStatement> getStatements() {
+		long end = SEQUENCE.get();
+		List<RecordedStatement> statements = new ArrayList<>();
+		for ( long sequence = Math.max( start, end - CAPACITY ); sequence < end; sequence++ ) {
+			RecordedStatement statement = BUFFER.get( (int) ( sequence & ( CAPACITY - 1 ) ) );
+			// Skip slots still being written, or already overwritten by a concurrent writer.
+			if ( statement != null && statement.sequence == sequence ) {
+				statements.add( statement );
+			}
+		}
+		return statements;
+	}
+
+	/**
+	 * Logs {@link #histogram()}.
+	 */
+	public static void dump() {
+		log.info( histogram() );
+	}
+
+	/**
+	 * @return A summary of the recorded statements: execution count, batches, rows and timings for each distinct SQL,
+	 * most time-consuming first, followed by the distribution of execution times.
+	 */
+	public static String histogram() {
+		List<RecordedStatement> statements = getStatements();
+		Map<String, List<RecordedStatement>> bySql = new LinkedHashMap<>();
+		for ( RecordedStatement statement : statements ) {
+			bySql.computeIfAbsent( statement.getSql(), sql -> new ArrayList<>() ).add( statement );
+		}
+		List<List<RecordedStatement>> groups = new ArrayList<>( bySql.values() );
+		groups.sort( Comparator.comparingLong( StatementRecorder::totalNanos ).reversed() );
+
+		StringBuilder sb = new StringBuilder();
+		sb.append( String.format( "%d JDBC statements recorded, %d distinct:%n", statements.size(), groups.size() ) );
+		sb.append( String.format( "%7s %7s %9s %10s %9s %9s %9s  %s%n", "count", "batches", "rows", "total us", "p50 us", "p99 us", "max us", "sql" ) );
+		for ( List<RecordedStatement> group : groups ) {
+			long[] nanos = group.stream().mapToLong( RecordedStatement::getNanos ).sorted().toArray();
+			sb.append( String.format( "%7d %7d %9d %10d %9d %9d %9d  %s%n",
+					group.size(),
+					group.stream().filter( s -> s.getBatchSize() > 0 ).count(),
+					group.stream().mapToLong( RecordedStatement::getRowsAffected ).filter( rows -> rows > 0 ).sum(),
+					micros( totalNanos( group ) ),
+					micros( percentile( nanos, 0.50 ) ),
+					micros( percentile( nanos, 0.99 ) ),
+					micros( nanos[nanos.length - 1] ),
+					group.get( 0 ).getSql() ) );
+		}
+
+		// Power-of-two buckets: [1, 2) us, [2, 4) us, ...
+		long[] buckets = new long[64];
+		int maxBucket = 0;
+		for ( RecordedStatement statement : statements ) {
+			int bucket = 63 - Long.numberOfLeadingZeros( Math.max( 1, micros( statement.getNanos() ) ) );
+			buckets[bucket]++;
+			maxBucket = Math.max( maxBucket, bucket );
+		}
+		long maxCount = Arrays.stream( buckets ).max().orElse( 0 );
+		sb.append( String.format( "Execution time distribution:%n" ) );
+		for ( int bucket = 0; bucket <= maxBucket && !statements.isEmpty(); bucket++ ) {
+			int width = (int) ( buckets[bucket] * 50 / maxCount );
+			sb.append( String.format( "  < %8d us | %-50s %d%n", 1L << ( bucket + 1 ), repeat( '#', width ), buckets[bucket] ) );
+		}
+		return sb.toString();
+	}
+
+	private static String normalize(String sql) {
+		if ( sql == null ) {
+			return "";
+		}
+		String normalized = NORMALIZED_SQL.get( sql );
+		if ( normalized == null ) {
+			normalized = LITERAL.matcher( WHITESPACE.matcher( sql.trim() ).replaceAll( " " ) ).replaceAll( "?" );
+			// Statements with inlined values never repeat: do not let them fill the memory.
+			if ( NORMALIZED_SQL.size() < MAX_NORMALIZED_SQL ) {
+				NORMALIZED_SQL.put( sql, normalized );
+			}
+		}
+		return normalized;
+	}
+
+	private static long totalNanos(List<RecordedStatement> statements) {
+		return statements.stream().mapToLong( RecordedStatement::getNanos ).sum();
+	}
+
+	private static long percentile(long[] sortedValues, double percentile) {
+		return sortedValues[(int) Math.ceil( percentile * sortedValues.length ) - 1];
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros( nanos );
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill( chars, c );
+		return new String( chars );
+	}
+
+	/**
+	 * One execution of a JDBC statement, or of a JDBC batch.
+	 */
+	public static final class RecordedStatement {
+
+		private final long sequence;
+		private final String sql;
+		private final int bindCount;
+		private final int batchSize;
+		private final long nanos;
+		private final long rowsAffected;
+
+		private RecordedStatement(long sequence, String sql, int bindCount, int batchSize, long nanos, long rowsAffected) {
+			this.sequence = sequence;
+			this.sql = sql;
+			this.bindCount = bindCount;
+			this.batchSize = batchSize;
+			this.nanos = nanos;
+			this.rowsAffected = rowsAffected;
+		}
+
+		/**
+		 * @return The SQL, with whitespace collapsed and literals replaced with {@code ?}.
+		 */
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * @return The number of parameters bound, summed over all the rows of a batch.
+		 */
+		public int getBindCount() {
+			return bindCount;
+		}
+
+		/**
+		 * @return The number of rows of the batch, or 0 if this was not a batch execution.
+		 */
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return The update count, summed over all the rows of a batch, or -1 if unknown (e.g. for queries).
+		 */
+		public long getRowsAffected() {
+			return rowsAffected;
+		}
+
+		@Override
+		public String toString() {
+			return sql + " [binds=" + bindCount + ", batch=" + batchSize + ", nanos=" + nanos + ", rows=" + rowsAffected + "]";
+		}
+	}
+
+}
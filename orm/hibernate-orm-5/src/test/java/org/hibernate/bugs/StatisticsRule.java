@@ -0,0 +1,95 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import org.jboss.logging.Logger;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Enables Hibernate statistics, resets them before each test, logs them after each test,
+ * and fails tests exceeding the bounds declared with {@link MaxStatistics}.
+ * <p>
+ * The SessionFactory must be available before {@code @Before} methods run,
+ * which is the case with {@code BaseCoreFunctionalTestCase}:
+ * <pre>
+ * &#64;Rule
+ * public final StatisticsRule statistics = new StatisticsRule( this::sessionFactory );
+ * </pre>
+ */
+public class StatisticsRule implements TestRule {
+
+	private static final Logger log = Logger.getLogger( StatisticsRule.class );
+
+	private final Supplier<? extends SessionFactory> sessionFactorySupplier;
+
+	private Statistics statistics;
+
+	public StatisticsRule(Supplier<? extends SessionFactory> sessionFactorySupplier) {
+		this.sessionFactorySupplier = sessionFactorySupplier;
+	}
+
+	@Override
+	public Statement apply(Statement base, Description description) {
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				statistics = sessionFactorySupplier.get().getStatistics();
+				statistics.setStatisticsEnabled( true );
+				statistics.clear();
+
+				base.evaluate();
+
+				log.infof(
+						"Statistics for %s: %d statements, %d entity loads, %d collection fetches,"
+								+ " %d second-level cache hits, %d second-level cache misses, %d flushes",
+						description.getDisplayName(),
+						statistics.getPrepareStatementCount(),
+						statistics.getEntityLoadCount(),
+						statistics.getCollectionFetchCount(),
+						statistics.getSecondLevelCacheHitCount(),
+						statistics.getSecondLevelCacheMissCount(),
+						statistics.getFlushCount()
+				);
+
+				MaxStatistics max = description.getAnnotation( MaxStatistics.class );
+				if ( max != null ) {
+					assertWithin( max, description );
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return The statistics of the current test, for finer-grained assertions.
+	 */
+	public Statistics getStatistics() {
+		return statistics;
+	}
+
+	private void assertWithin(MaxStatistics max, Description description) {
+		List<String> exceeded = new ArrayList<>();
+		check( exceeded, "statements", max.statements(), statistics.getPrepareStatementCount() );
+		check( exceeded, "entity loads", max.entityLoads(), statistics.getEntityLoadCount() );
+		check( exceeded, "collection fetches", max.collectionFetches(), statistics.getCollectionFetchCount() );
+		check( exceeded, "second-level cache hits", max.secondLevelCacheHits(), statistics.getSecondLevelCacheHitCount() );
+		check( exceeded, "second-level cache misses", max.secondLevelCacheMisses(), statistics.getSecondLevelCacheMissCount() );
+		check( exceeded, "flushes", max.flushes(), statistics.getFlushCount() );
+		if ( !exceeded.isEmpty() ) {
+			throw new AssertionError( description.getDisplayName() + " exceeded its statistics bounds: " + String.join( ", ", exceeded ) );
+		}
+	}
+
+	private static void check(List<String> exceeded, String name, long max, long actual) {
+		if ( max >= 0 && actual > max ) {
+			exceeded.add( actual + " " + name + " (at most " + max + " expected)" );
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package org.hibernate.bugs;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.hibernate.boot.archive.scan.internal.ScanResultImpl;
+import org.hibernate.boot.archive.scan.internal.StandardScanner;
+import org.hibernate.boot.archive.scan.spi.ClassDescriptor;
+import org.hibernate.boot.archive.scan.spi.ScanEnvironment;
+import org.hibernate.boot.archive.scan.spi.ScanOptions;
+import org.hibernate.boot.archive.scan.spi.ScanParameters;
+import org.hibernate.boot.archive.scan.spi.ScanResult;
+
+/**
+ * The default scanner, leaving out nested classes: the entities nested in a test class belong to that test,
+ * which lists them itself, e.g. in {@code getAnnotatedClasses()}, so that each template keeps its own schema.
+ * Enabled for templatePU in resources/META-INF/persistence.xml.
+ */
+public class TopLevelClassScanner extends StandardScanner {
+
+	@Override
+	public ScanResult scan(ScanEnvironment environment, ScanOptions options, ScanParameters parameters) {
+		ScanResult result = super.scan( environment, options, parameters );
+		Set<ClassDescriptor> topLevelClasses = result.getLocatedClasses().stream()
+				.filter( descriptor -> descriptor.getName().indexOf( '$' ) < 0 )
+				.collect( Collectors.toSet() );
+		return new ScanResultImpl( result.getLocatedPackages(), topLevelClasses, result.getLocatedMappingFiles() );
+	}
+
+}
@@ -0,0 +1,109 @@
+package org.hibernate.bugs;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * This template demonstrates how to report a throughput regression for Hibernate ORM, using JMH.
+ * <p>
+ * Run it with the GC profiler to get the allocation rate next to the ops/s figures:
+ * {@code java -jar target/benchmarks.jar -prof gc}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ORMBenchmark {
+
+	@Benchmark
+	public YourAnnotatedEntity persist(QuarkusLikeSessionFactoryState state) {
+		try ( Session session = state.getSessionFactory().openSession() ) {
+			session.beginTransaction();
+			YourAnnotatedEntity entity = new YourAnnotatedEntity( "persisted" );
+			session.persist( entity );
+			session.getTransaction().commit();
+			return entity;
+		}
+	}
+
+	@Benchmark
+	public YourAnnotatedEntity find(QuarkusLikeSessionFactoryState state) {
+		try ( Session session = state.getSessionFactory().openSession() ) {
+			return session.find( YourAnnotatedEntity.class, randomId( state ) );
+		}
+	}
+
+	@Benchmark
+	public List<YourAnnotatedEntity> hqlSelect(QuarkusLikeSessionFactoryState state) {
+		try ( Session session = state.getSessionFactory().openSession() ) {
+			return session.createSelectionQuery( "from YourAnnotatedEntity e where e.name = :name", YourAnnotatedEntity.class )
+					.setParameter( "name", QuarkusLikeSessionFactoryState.name( (int) randomId( state ) - 1 ) )
+					.getResultList();
+		}
+	}
+
+	@Benchmark
+	public void flush(ManagedEntitiesState state) {
+		// Dirty checking visits every managed entity, only one of them is actually updated.
+		state.entities.get( ThreadLocalRandom.current().nextInt( state.entities.size() ) ).setCounter( state.counter++ );
+		state.session.flush();
+	}
+
+	private static long randomId(QuarkusLikeSessionFactoryState state) {
+		return ThreadLocalRandom.current().nextLong( state.rowCount ) + 1;
+	}
+
+	/**
+	 * A Session holding {@code managedEntities} loaded entities in its persistence context, one per benchmark thread.
+	 * Each thread loads its own slice of the table, so that concurrent flushes do not wait on each other's row locks.
+	 */
+	@State(Scope.Thread)
+	public static class ManagedEntitiesState {
+
+		@Param("1000")
+		public int managedEntities;
+
+		private Session session;
+
+		private List<YourAnnotatedEntity> entities;
+
+		private int counter;
+
+		@Setup(Level.Iteration)
+		public void setUp(QuarkusLikeSessionFactoryState sessionFactoryState, ThreadParams threadParams) {
+			session = sessionFactoryState.getSessionFactory().openSession();
+			session.beginTransaction();
+			entities = session.createSelectionQuery( "from YourAnnotatedEntity e order by e.id", YourAnnotatedEntity.class )
+					.setFirstResult( threadParams.getThreadIndex() * managedEntities )
+					.setMaxResults( managedEntities )
+					.getResultList();
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() {
+			// Roll back so that each iteration starts from the same data.
+			session.getTransaction().rollback();
+			session.close();
+		}
+	}
+
+}
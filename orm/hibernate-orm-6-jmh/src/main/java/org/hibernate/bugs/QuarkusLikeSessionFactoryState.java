@@ -0,0 +1,100 @@
+package org.hibernate.bugs;
+
+import java.util.Locale;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.id.SequenceMismatchStrategy;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.loader.BatchFetchStyle;
+import org.hibernate.query.NullPrecedence;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A SessionFactory bootstrapped with the same settings as {@code QuarkusLikeORMUnitTestCase}
+ * in the hibernate-orm-6 template, shared by all benchmark threads.
+ * <p>
+ * Defaults come from resources/hibernate.properties, just like in the test case templates.
+ */
+@State(Scope.Benchmark)
+public class QuarkusLikeSessionFactoryState {
+
+	/**
+	 * Number of rows inserted before the measurement starts, available to read benchmarks.
+	 */
+	@Param("10000")
+	public int rowCount;
+
+	private SessionFactory sessionFactory;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		StandardServiceRegistryBuilder srb = new StandardServiceRegistryBuilder()
+				.applySetting( AvailableSettings.HBM2DDL_AUTO, "create-drop" )
+				// Settings that will make your benchmark run under similar configuration that Quarkus is using by default:
+				.applySetting( AvailableSettings.PREFERRED_POOLED_OPTIMIZER, StandardOptimizerDescriptor.POOLED_LO.getExternalName() )
+				.applySetting( AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, "16" )
+				.applySetting( AvailableSettings.BATCH_FETCH_STYLE, BatchFetchStyle.PADDED.toString() )
+				.applySetting( AvailableSettings.QUERY_PLAN_CACHE_MAX_SIZE, "2048" )
+				.applySetting( AvailableSettings.DEFAULT_NULL_ORDERING, NullPrecedence.NONE.toString().toLowerCase( Locale.ROOT ) )
+				.applySetting( AvailableSettings.IN_CLAUSE_PARAMETER_PADDING, "true" )
+				.applySetting( AvailableSettings.SEQUENCE_INCREMENT_SIZE_MISMATCH_STRATEGY, SequenceMismatchStrategy.NONE.toString() );
+				// Add your own settings that are a part of your quarkus configuration:
+				// .applySetting( AvailableSettings.SOME_CONFIGURATION_PROPERTY, "SOME_VALUE" );
+
+		sessionFactory = new MetadataSources( srb.build() )
+				// Add your entities here.
+				.addAnnotatedClass( YourAnnotatedEntity.class )
+				.buildMetadata()
+				.buildSessionFactory();
+
+		try ( Session session = sessionFactory.openSession() ) {
+			session.beginTransaction();
+			for ( int i = 0; i < rowCount; i++ ) {
+				session.persist( new YourAnnotatedEntity( name( i ) ) );
+				if ( i % 100 == 99 ) {
+					session.flush();
+					session.clear();
+				}
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void deletePersistedRows() {
+		// Keep the table size stable across iterations, whatever the persist benchmark inserted.
+		try ( Session session = sessionFactory.openSession() ) {
+			session.beginTransaction();
+			session.createMutationQuery( "delete from YourAnnotatedEntity e where e.id > :maxId" )
+					.setParameter( "maxId", (long) rowCount )
+					.executeUpdate();
+			session.getTransaction().commit();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if ( sessionFactory != null ) {
+			sessionFactory.close();
+		}
+	}
+
+	public SessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	static String name(int index) {
+		return "name" + index;
+	}
+
+}
@@ -0,0 +1,48 @@
+package org.hibernate.bugs;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+
+/**
+ * The entity exercised by {@link ORMBenchmark}. Replace or extend it with the model of your regression.
+ */
+@Entity
+public class YourAnnotatedEntity {
+
+	@Id
+	@GeneratedValue
+	private Long id;
+
+	private String name;
+
+	private int counter;
+
+	protected YourAnnotatedEntity() {
+	}
+
+	public YourAnnotatedEntity(String name) {
+		this.name = name;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public int getCounter() {
+		return counter;
+	}
+
+	public void setCounter(int counter) {
+		this.counter = counter;
+	}
+
+}
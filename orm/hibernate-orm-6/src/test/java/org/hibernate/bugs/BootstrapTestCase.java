@@ -0,0 +1,194 @@
+package org.hibernate.bugs;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.archive.scan.internal.StandardScanOptions;
+import org.hibernate.boot.archive.scan.internal.StandardScanParameters;
+import org.hibernate.boot.archive.scan.internal.StandardScanner;
+import org.hibernate.boot.archive.scan.spi.ClassDescriptor;
+import org.hibernate.boot.archive.scan.spi.ScanEnvironment;
+import org.hibernate.boot.registry.BootstrapServiceRegistry;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.bytecode.enhance.spi.DefaultEnhancementContext;
+import org.hibernate.bytecode.enhance.spi.Enhancer;
+import org.hibernate.bytecode.internal.BytecodeProviderInitiator;
+import org.hibernate.cfg.AvailableSettings;
+
+import org.jboss.logging.Logger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This template demonstrates how to report a bootstrap performance regression: it generates domain models
+ * of increasing size with {@link DomainModelGenerator}, bootstraps Hibernate ORM for each of them,
+ * and reports the wall time and allocations of each bootstrap phase, as measured by {@link PhaseProfiler}.
+ * <p>
+ * The phases are those {@code Persistence.createEntityManagerFactory()} chains internally, run one by one
+ * through the native API: service registry, scanning, bytecode enhancement, metadata binding,
+ * SessionFactory build, and schema export.
+ * Set the {@code bootstrap.entities} system property (e.g. {@code 10,100,1000,5000}) to change the model sizes:
+ * 10 and 100 entities by default, and also 1000 with {@code -Dbenchmarks=full} (see {@link Benchmarks}).
+ */
+public class BootstrapTestCase {
+
+	private static final Logger log = Logger.getLogger( BootstrapTestCase.class );
+
+	private static final int[] ENTITIES = Benchmarks.sizes( "bootstrap.entities", "10,100,1000", "10,100" );
+
+	private static final String GENERATED_PACKAGE = "org.hibernate.bugs.generated";
+
+	@Test
+	public void bootstrapPhases() throws Exception {
+		// Let the JIT compile the bootstrap code, so that the smallest model is not penalized.
+		bootstrap( ENTITIES[0] );
+
+		Map<Integer, PhaseProfiler> profilers = new LinkedHashMap<>();
+		for ( int entities : ENTITIES ) {
+			profilers.put( entities, bootstrap( entities ) );
+		}
+
+		List<String> phases = profilers.values().iterator().next().getPhases();
+		StringBuilder sb = new StringBuilder( String.format( "Bootstrap phases, wall time in ms / allocations in MB:%n%-18s", "entities" ) );
+		for ( int entities : profilers.keySet() ) {
+			sb.append( String.format( "%18d", entities ) );
+		}
+		sb.append( String.format( "%n" ) );
+		for ( String phase : phases ) {
+			sb.append( String.format( "%-18s", phase ) );
+			for ( PhaseProfiler profiler : profilers.values() ) {
+				sb.append( String.format( "%18s", String.format( "%d / %d", profiler.getNanos( phase ) / 1_000_000,
+						profiler.getAllocatedBytes( phase ) / ( 1024 * 1024 ) ) ) );
+			}
+			sb.append( String.format( "%n" ) );
+		}
+		log.info( sb );
+	}
+
+	private static PhaseProfiler bootstrap(int entities) throws IOException {
+		Map<String, byte[]> classes = new DomainModelGenerator( GENERATED_PACKAGE ).entities( entities ).generate();
+		Path directory = Files.createTempDirectory( "bootstrap" );
+		ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+		try {
+			DomainModelGenerator.save( classes, directory );
+			URL root = directory.toUri().toURL();
+			PhaseProfiler profiler = new PhaseProfiler();
+
+			StandardServiceRegistry serviceRegistry = profiler.measure( "service registry", () -> {
+				BootstrapServiceRegistry bootstrapServiceRegistry = new BootstrapServiceRegistryBuilder().build();
+				return new StandardServiceRegistryBuilder( bootstrapServiceRegistry )
+						.applySetting( AvailableSettings.HBM2DDL_AUTO, "none" )
+						.build();
+			} );
+			try {
+				List<String> classNames = profiler.measure( "scanning", () -> scan( root ) );
+				assertEquals( entities, classNames.size() );
+
+				// As the hibernate-enhance-maven-plugin would at build time, or a JPA container at deployment.
+				Map<String, byte[]> enhancedClasses = profiler.measure( "enhancement", () -> enhance( classNames, classes, root ) );
+
+				Metadata metadata = profiler.measure( "metadata binding", () -> {
+					Class<?>[] annotatedClasses = DomainModelGenerator.load( enhancedClasses );
+					// Hibernate resolves classes by name through the context class loader, among others.
+					Thread.currentThread().setContextClassLoader( annotatedClasses[0].getClassLoader() );
+					MetadataSources metadataSources = new MetadataSources( serviceRegistry );
+					for ( Class<?> annotatedClass : annotatedClasses ) {
+						metadataSources.addAnnotatedClass( annotatedClass );
+					}
+					return metadataSources.buildMetadata();
+				} );
+
+				try ( SessionFactory sessionFactory = profiler.measure( "SessionFactory", metadata::buildSessionFactory ) ) {
+					assertEquals( entities, sessionFactory.getMetamodel().getEntities().size() );
+					profiler.measure( "schema export", () -> sessionFactory.getSchemaManager().exportMappedObjects( true ) );
+					sessionFactory.getSchemaManager().dropMappedObjects( true );
+				}
+			}
+			finally {
+				StandardServiceRegistryBuilder.destroy( serviceRegistry );
+			}
+			return profiler;
+		}
+		finally {
+			Thread.currentThread().setContextClassLoader( originalClassLoader );
+			try ( Stream<Path> files = Files.walk( directory ) ) {
+				for ( Path file : files.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() ) ) {
+					Files.delete( file );
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The names of the entity classes found under {@code root}, as found by JPA scanning.
+	 */
+	private static List<String> scan(URL root) {
+		ScanEnvironment environment = new ScanEnvironment() {
+			@Override
+			public URL getRootUrl() {
+				return root;
+			}
+
+			@Override
+			public List<URL> getNonRootUrls() {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public List<String> getExplicitlyListedClassNames() {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public List<String> getExplicitlyListedMappingFiles() {
+				return Collections.emptyList();
+			}
+		};
+		// The same options as with hibernate.archive.autodetection "class" in persistence.xml.
+		return new StandardScanner().scan( environment, new StandardScanOptions( "class", false ), StandardScanParameters.INSTANCE )
+				.getLocatedClasses()
+				.stream()
+				.filter( descriptor -> descriptor.getCategorization() == ClassDescriptor.Categorization.MODEL )
+				.map( ClassDescriptor::getName )
+				.collect( Collectors.toList() );
+	}
+
+	private static Map<String, byte[]> enhance(List<String> classNames, Map<String, byte[]> classes, URL root) {
+		try ( URLClassLoader classLoader = new URLClassLoader( new URL[] { root }, BootstrapTestCase.class.getClassLoader() ) ) {
+			Enhancer enhancer = BytecodeProviderInitiator.buildDefaultBytecodeProvider().getEnhancer( new DefaultEnhancementContext() {
+				@Override
+				public ClassLoader getLoadingClassLoader() {
+					// Where the enhancer finds the classes referenced by the enhanced ones.
+					return classLoader;
+				}
+			} );
+			Map<String, byte[]> enhancedClasses = new LinkedHashMap<>();
+			for ( String className : classNames ) {
+				byte[] original = classes.get( className );
+				byte[] enhanced = enhancer.enhance( className, original );
+				enhancedClasses.put( className, enhanced == null ? original : enhanced );
+			}
+			return enhancedClasses;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+package org.hibernate.bugs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.query.SelectionQuery;
+
+import org.jboss.logging.Logger;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This template demonstrates how to report a memory regression when reading large result sets: it fills a table
+ * with generated rows, then reads them back through {@link ScrollableResults} or {@code getResultStream()},
+ * from a {@link StatelessSession} or from a {@link Session} cleared at regular intervals.
+ * <p>
+ * It asserts that the peak live heap does not grow with the number of rows read, as it would if Hibernate,
+ * or the JDBC driver, buffered the whole result set.
+ * Set the {@code bulk.read.rows} system property to read millions of rows, and {@code bulk.read.fetch.size}
+ * to change the JDBC fetch size. It reads 20,000 rows by default, 100,000 with {@code -Dbenchmarks=full}
+ * (see {@link Benchmarks}).
+ */
+@RunWith(Parameterized.class)
+public class BulkReadTestCase {
+
+	private static final Logger log = Logger.getLogger( BulkReadTestCase.class );
+
+	private static final int ROWS = Benchmarks.size( "bulk.read.rows", 100_000, 20_000 );
+
+	private static final int FETCH_SIZE = Integer.getInteger( "bulk.read.fetch.size", 1_000 );
+
+	private static final int CHECKPOINT_INTERVAL = Math.max( 1, ROWS / 20 );
+
+	// Allows for the noise of the measurement; reading all rows at once would take several times as much.
+	private static final long TOLERATED_GROWTH = 8 * 1024 * 1024;
+
+	public enum ReadMode {
+		STATELESS_SCROLL,
+		STATELESS_STREAM,
+		SESSION_SCROLL,
+		SESSION_STREAM
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static List<ReadMode> parameters() {
+		return Arrays.asList( ReadMode.values() );
+	}
+
+	private static Object sessionFactoryKey;
+
+	private final ReadMode readMode;
+
+	private SessionFactory sf;
+
+	public BulkReadTestCase(ReadMode readMode) {
+		this.readMode = readMode;
+	}
+
+	@Before
+	public void setup() {
+		Map<String, Object> settings = new HashMap<>();
+		settings.put( AvailableSettings.HBM2DDL_AUTO, "create-drop" );
+
+		List<Class<?>> annotatedClasses = Arrays.asList( BulkRow.class );
+
+		// The table is filled once, then read by every test.
+		sessionFactoryKey = Arrays.asList( settings, annotatedClasses );
+		sf = SessionFactoryCache.getOrBuild( sessionFactoryKey, url -> {
+			StandardServiceRegistryBuilder srb = new StandardServiceRegistryBuilder()
+				.applySettings( settings )
+				// Otherwise H2 computes the whole result of a query before returning the first row.
+				.applySetting( AvailableSettings.JAKARTA_JDBC_URL, url + ";LAZY_QUERY_EXECUTION=TRUE" );
+
+			MetadataSources metadataSources = new MetadataSources( srb.build() );
+			annotatedClasses.forEach( metadataSources::addAnnotatedClass );
+
+			SessionFactory sessionFactory = metadataSources.buildMetadata().buildSessionFactory();
+			sessionFactory.inTransaction( session -> session.createNativeMutationQuery(
+					"insert into BulkRow (id, name, amount) select x, 'row ' || x, x from system_range(1, " + ROWS + ")" )
+					.executeUpdate() );
+			return sessionFactory;
+		} );
+	}
+
+	@AfterClass
+	public static void cleanup() {
+		// Do not keep the rows in memory for the other tests.
+		SessionFactoryCache.evict( sessionFactoryKey );
+	}
+
+	@Test
+	public void boundedMemory() {
+		long quarterGrowth = readRows( ROWS / 4 );
+		long fullGrowth = readRows( ROWS );
+
+		log.infof( "%s with fetch size %d: peak live heap grew by %d KB for %d rows, by %d KB for %d rows",
+				readMode, FETCH_SIZE, quarterGrowth / 1024, ROWS / 4, fullGrowth / 1024, ROWS );
+		assertTrue( String.format( "Peak live heap grew by %d KB when reading %d rows instead of %d", ( fullGrowth - quarterGrowth ) / 1024, ROWS, ROWS / 4 ),
+				fullGrowth - quarterGrowth <= TOLERATED_GROWTH );
+	}
+
+	private long readRows(int maxRows) {
+		HeapMonitor heapMonitor = new HeapMonitor();
+		long count = 0;
+		long amount = 0;
+		if ( readMode == ReadMode.STATELESS_SCROLL || readMode == ReadMode.STATELESS_STREAM ) {
+			try ( StatelessSession session = sf.openStatelessSession() ) {
+				session.beginTransaction();
+				SelectionQuery<BulkRow> query = session.createSelectionQuery( "from BulkRow", BulkRow.class )
+						.setFetchSize( FETCH_SIZE )
+						.setMaxResults( maxRows );
+				if ( readMode == ReadMode.STATELESS_SCROLL ) {
+					try ( ScrollableResults<BulkRow> results = query.scroll( ScrollMode.FORWARD_ONLY ) ) {
+						while ( results.next() ) {
+							amount += results.get().amount;
+							if ( ++count % CHECKPOINT_INTERVAL == 0 ) {
+								heapMonitor.checkpoint();
+							}
+						}
+					}
+				}
+				else {
+					try ( Stream<BulkRow> results = query.getResultStream() ) {
+						for ( BulkRow row : (Iterable<BulkRow>) results::iterator ) {
+							amount += row.amount;
+							if ( ++count % CHECKPOINT_INTERVAL == 0 ) {
+								heapMonitor.checkpoint();
+							}
+						}
+					}
+				}
+				session.getTransaction().commit();
+			}
+		}
+		else {
+			try ( Session session = sf.openSession() ) {
+				session.beginTransaction();
+				SelectionQuery<BulkRow> query = session.createSelectionQuery( "from BulkRow", BulkRow.class )
+						.setFetchSize( FETCH_SIZE )
+						.setMaxResults( maxRows );
+				if ( readMode == ReadMode.SESSION_SCROLL ) {
+					try ( ScrollableResults<BulkRow> results = query.scroll( ScrollMode.FORWARD_ONLY ) ) {
+						while ( results.next() ) {
+							amount += results.get().amount;
+							count = afterRow( session, count, heapMonitor );
+						}
+					}
+				}
+				else {
+					try ( Stream<BulkRow> results = query.getResultStream() ) {
+						for ( BulkRow row : (Iterable<BulkRow>) results::iterator ) {
+							amount += row.amount;
+							count = afterRow( session, count, heapMonitor );
+						}
+					}
+				}
+				session.getTransaction().commit();
+			}
+		}
+
+		assertEquals( maxRows, count );
+		assertTrue( amount > 0 );
+		return heapMonitor.getPeakGrowth();
+	}
+
+	private static long afterRow(Session session, long count, HeapMonitor heapMonitor) {
+		count++;
+		// A Session keeps every entity it loads: clear it as often as the fetch size.
+		if ( count % FETCH_SIZE == 0 ) {
+			session.clear();
+		}
+		if ( count % CHECKPOINT_INTERVAL == 0 ) {
+			heapMonitor.checkpoint();
+		}
+		return count;
+	}
+
+	@Entity(name = "BulkRow")
+	public static class BulkRow {
+
+		@Id
+		private Long id;
+
+		private String name;
+
+		private long amount;
+	}
+
+}
@@ -0,0 +1,270 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.Version;
+
+import org.hibernate.Session;
+import org.hibernate.StaleStateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This template demonstrates how to report a contention issue: it drives many threads, each opening its own sessions,
+ * against one shared SessionFactory, mixing reads with optimistically versioned writes to a few hot rows.
+ * <p>
+ * It reports the throughput, the p50/p99 latency of reads and writes, the optimistic lock failures,
+ * and the time spent waiting for one of the {@code hibernate.connection.pool_size} connections
+ * (see {@link RecordingConnectionProvider}). It also checks that versioning did not let any update get lost.
+ * Lock waits, in Hibernate ORM or on the rows of the database, are recorded by {@link LockContentionRecorder}
+ * in a second run, so that the overhead of recording does not count in the throughput and latencies.
+ * Tune it with the {@code load.threads}, {@code load.operations}, {@code load.write.ratio} and {@code load.accounts}
+ * system properties: 2,000 operations by default, 20,000 with {@code -Dbenchmarks=full} (see {@link Benchmarks}).
+ * {@link #virtualThreads()} only runs on Java 21 or later.
+ */
+public class ConcurrentLoadTestCase extends SharedSessionFactoryTestCase {
+
+	private static final int THREADS = Integer.getInteger( "load.threads", 16 );
+
+	private static final int OPERATIONS = Benchmarks.size( "load.operations", 20_000, 2_000 );
+
+	private static final double WRITE_RATIO = Double.parseDouble( System.getProperty( "load.write.ratio", "0.2" ) );
+
+	// The fewer the accounts, the more optimistic lock failures.
+	private static final int ACCOUNTS = Integer.getInteger( "load.accounts", 100 );
+
+	private static final int CONTENDED_SITES = 3;
+
+	@Override
+	protected Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Account.class };
+	}
+
+	@Override
+	protected void configure(Configuration configuration) {
+		super.configure( configuration );
+
+		// Logging metrics for each of the thousands of sessions would serialize threads on the console.
+		configuration.setProperty( AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString() );
+	}
+
+	@Test
+	public void platformThreads() throws Exception {
+		run( "platform", () -> Executors.newFixedThreadPool( THREADS ) );
+	}
+
+	@Test
+	public void virtualThreads() throws Exception {
+		Assume.assumeTrue( "Virtual threads require Java 21", VirtualThreads.isAvailable() );
+		run( "virtual", VirtualThreads::newExecutor );
+	}
+
+	private void run(String threadKind, Supplier<ExecutorService> executors) throws Exception {
+		inTransaction( session -> {
+			for ( long id = 1; id <= ACCOUNTS; id++ ) {
+				session.persist( new Account( id ) );
+			}
+		} );
+
+		RecordingConnectionProvider.clearAcquisitions();
+		Load load = new Load();
+		load.run( executors.get() );
+		long connectionWaitNanos = RecordingConnectionProvider.getWaitNanos();
+		long connections = RecordingConnectionProvider.getAcquisitionCount();
+		long maxConnectionWaitNanos = RecordingConnectionProvider.getMaxWaitNanos();
+
+		// Recording every lock wait, with its stack trace, slows the threads down:
+		// lock waits are recorded while running the same operations again, not while measuring.
+		Load recordedLoad = new Load();
+		List<JfrCallSiteRecorder.CallSite> contention;
+		try ( LockContentionRecorder recorder = new LockContentionRecorder() ) {
+			recordedLoad.run( executors.get() );
+			// Leave out the main thread, waiting for the workers, and the connection waits reported on their own.
+			contention = recorder.stop().stream()
+					.filter( site -> !site.getStack().startsWith( ConcurrentLoadTestCase.class.getName() )
+							&& !site.getStack().startsWith( RecordingConnectionProvider.class.getName() ) )
+					.collect( Collectors.toList() );
+		}
+		long lockWaitNanos = contention.stream().mapToLong( JfrCallSiteRecorder.CallSite::getTotalNanos ).sum();
+
+		long[] readLatencies = load.select( false );
+		long[] writeLatencies = load.select( true );
+		log.infof( "%d %s threads, %d operations in %d ms (%.0f/s): reads p50 %d us, p99 %d us; writes p50 %d us, p99 %d us;"
+						+ " %d optimistic lock failures out of %d writes; connection wait %d ms for %d acquisitions (max %d ms);"
+						+ " lock wait %d ms in the recorded run%s",
+				THREADS, threadKind, OPERATIONS, millis( load.elapsed ), OPERATIONS * 1_000_000_000.0 / load.elapsed,
+				micros( percentile( readLatencies, 0.50 ) ), micros( percentile( readLatencies, 0.99 ) ),
+				micros( percentile( writeLatencies, 0.50 ) ), micros( percentile( writeLatencies, 0.99 ) ),
+				load.optimisticLockFailures.get(), writeLatencies.length,
+				millis( connectionWaitNanos ), connections, millis( maxConnectionWaitNanos ), millis( lockWaitNanos ),
+				contention.isEmpty() ? "" : ", mostly:" );
+		contention.stream().limit( CONTENDED_SITES ).forEach( log::info );
+
+		// Each committed deposit adds exactly 1: anything else is a lost update.
+		long committedWrites = load.committedWrites.get() + recordedLoad.committedWrites.get();
+		inTransaction( session -> assertEquals( committedWrites,
+				(long) session.createSelectionQuery( "select sum(a.balance) from Account a", Long.class ).getSingleResult() ) );
+	}
+
+	private void read(long id) {
+		try ( Session session = openSession() ) {
+			session.beginTransaction();
+			session.find( Account.class, id );
+			// Many threads parsing the same query, as the query plan cache is meant for.
+			session.createSelectionQuery( "select count(a) from Account a where a.balance >= :balance", Long.class )
+					.setParameter( "balance", 0L )
+					.getSingleResult();
+			session.getTransaction().commit();
+		}
+	}
+
+	/**
+	 * @return Whether the deposit was committed, rather than rejected because of a concurrent update.
+	 */
+	private boolean deposit(long id) {
+		try ( Session session = openSession() ) {
+			session.beginTransaction();
+			try {
+				session.find( Account.class, id ).balance++;
+				session.getTransaction().commit();
+				return true;
+			}
+			catch (RuntimeException e) {
+				if ( session.getTransaction().isActive() ) {
+					session.getTransaction().rollback();
+				}
+				if ( isOptimisticLockFailure( e ) ) {
+					return false;
+				}
+				throw e;
+			}
+		}
+	}
+
+	private static boolean isOptimisticLockFailure(Throwable e) {
+		for ( Throwable cause = e; cause != null; cause = cause.getCause() ) {
+			if ( cause instanceof OptimisticLockException || cause instanceof StaleStateException ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long percentile(long[] sortedValues, double percentile) {
+		return sortedValues.length == 0 ? 0 : sortedValues[(int) Math.ceil( percentile * sortedValues.length ) - 1];
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros( nanos );
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis( nanos );
+	}
+
+	/**
+	 * {@link #OPERATIONS} reads and writes, spread over {@link #THREADS} threads.
+	 */
+	private final class Load {
+
+		private final long[] latencies = new long[OPERATIONS];
+		private final boolean[] writes = new boolean[OPERATIONS];
+		private final AtomicInteger nextOperation = new AtomicInteger();
+		private final AtomicLong committedWrites = new AtomicLong();
+		private final AtomicLong optimisticLockFailures = new AtomicLong();
+		private long elapsed;
+
+		private void run(ExecutorService executor) throws Exception {
+			long start = System.nanoTime();
+			try {
+				List<Future<?>> workers = new ArrayList<>();
+				for ( int i = 0; i < THREADS; i++ ) {
+					workers.add( executor.submit( () -> {
+						for ( int operation; ( operation = nextOperation.getAndIncrement() ) < OPERATIONS; ) {
+							ThreadLocalRandom random = ThreadLocalRandom.current();
+							long id = 1 + random.nextInt( ACCOUNTS );
+							writes[operation] = random.nextDouble() < WRITE_RATIO;
+							long operationStart = System.nanoTime();
+							if ( writes[operation] ) {
+								if ( deposit( id ) ) {
+									committedWrites.incrementAndGet();
+								}
+								else {
+									optimisticLockFailures.incrementAndGet();
+								}
+							}
+							else {
+								read( id );
+							}
+							latencies[operation] = System.nanoTime() - operationStart;
+						}
+						return null;
+					} ) );
+				}
+				for ( Future<?> worker : workers ) {
+					// Rethrows the first unexpected failure.
+					worker.get();
+				}
+			}
+			finally {
+				executor.shutdownNow();
+			}
+			elapsed = System.nanoTime() - start;
+		}
+
+		/**
+		 * @return The sorted latencies of writes, or of reads.
+		 */
+		private long[] select(boolean write) {
+			long[] selected = new long[latencies.length];
+			int count = 0;
+			for ( int i = 0; i < latencies.length; i++ ) {
+				if ( writes[i] == write ) {
+					selected[count++] = latencies[i];
+				}
+			}
+			selected = Arrays.copyOf( selected, count );
+			Arrays.sort( selected );
+			return selected;
+		}
+	}
+
+	@Entity(name = "Account")
+	public static class Account {
+
+		@Id
+		private Long id;
+
+		@Version
+		private int version;
+
+		private long balance;
+
+		protected Account() {
+		}
+
+		public Account(Long id) {
+			this.id = id;
+		}
+	}
+
+}
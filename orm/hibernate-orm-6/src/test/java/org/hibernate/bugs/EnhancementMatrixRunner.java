@@ -0,0 +1,279 @@
+package org.hibernate.bugs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.bytecode.enhance.spi.DefaultEnhancementContext;
+import org.hibernate.bytecode.enhance.spi.Enhancer;
+import org.hibernate.bytecode.enhance.spi.UnloadedClass;
+import org.hibernate.bytecode.enhance.spi.UnloadedField;
+import org.hibernate.bytecode.internal.BytecodeProviderInitiator;
+
+import org.hibernate.testing.junit4.CustomRunner;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+
+/**
+ * Runs a test class once for each combination of the hibernate-enhance-maven-plugin options:
+ * enableDirtyTracking, enableLazyInitialization, enableAssociationManagement and enableExtendedEnhancement,
+ * plus once without enhancement at all.
+ * <p>
+ * For each combination, the test class and its nested classes (i.e. its entities) are loaded again,
+ * and enhanced, by a dedicated class loader: they must not be enhanced at build time already,
+ * so leave the options of the plugin in pom.xml set to false.
+ * The running combination is available from {@link #currentEnhancement()}, and appended to test names.
+ * Annotate the test class with {@link Options} to run only some of the combinations.
+ * <p>
+ * By default, as a smoke test, only the usual build-time enhancement (dirty tracking and lazy initialization) runs
+ * after the run without enhancement: pass {@code -Denhancement.matrix=full} to run every combination.
+ */
+public class EnhancementMatrixRunner extends Suite {
+
+	private static final boolean FULL_MATRIX = "full".equals( System.getProperty( "enhancement.matrix" ) );
+
+	private static volatile Enhancement current;
+
+	public EnhancementMatrixRunner(Class<?> klass) throws InitializationError {
+		super( klass, runners( klass ) );
+	}
+
+	/**
+	 * @return The enhancement of the test class being run.
+	 */
+	public static Enhancement currentEnhancement() {
+		return current;
+	}
+
+	/**
+	 * @return Whether every combination runs, rather than the smoke test.
+	 */
+	public static boolean isFullMatrix() {
+		return FULL_MATRIX;
+	}
+
+	private static List<Runner> runners(Class<?> klass) throws InitializationError {
+		Options options = klass.getAnnotation( Options.class );
+		List<Runner> runners = new ArrayList<>();
+		try {
+			runners.add( new EnhancementRunner( klass, null ) );
+			for ( int flags = 0; flags < 16; flags++ ) {
+				Enhancement enhancement = new Enhancement( ( flags & 1 ) != 0, ( flags & 2 ) != 0, ( flags & 4 ) != 0, ( flags & 8 ) != 0 );
+				if ( options != null && !enhancement.isIn( options ) ) {
+					continue;
+				}
+				if ( !FULL_MATRIX && !enhancement.isBuildTimeDefault() ) {
+					continue;
+				}
+				ClassLoader classLoader = new EnhancingClassLoader( klass, enhancement );
+				runners.add( new EnhancementRunner( classLoader.loadClass( klass.getName() ), enhancement ) );
+			}
+		}
+		catch (Exception e) {
+			throw new InitializationError( e );
+		}
+		return runners;
+	}
+
+	@Override
+	protected void runChild(Runner runner, RunNotifier notifier) {
+		EnhancementRunner enhancementRunner = (EnhancementRunner) runner;
+		ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+		try {
+			// Hibernate resolves classes by name through the context class loader, among others.
+			Thread.currentThread().setContextClassLoader( enhancementRunner.getTestClass().getJavaClass().getClassLoader() );
+			current = enhancementRunner.enhancement;
+			super.runChild( runner, notifier );
+		}
+		finally {
+			current = null;
+			Thread.currentThread().setContextClassLoader( originalClassLoader );
+		}
+	}
+
+	/**
+	 * Restricts the runs of the annotated test class to the given values of each option, e.g.
+	 * {@code @Options(dirtyTracking = true, lazyInitialization = true, associationManagement = false, extendedEnhancement = false)}
+	 * to compare the usual build-time enhancement with no enhancement at all. By default, each option is tried both ways.
+	 * The run without enhancement always happens.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface Options {
+
+		boolean[] dirtyTracking() default { false, true };
+
+		boolean[] lazyInitialization() default { false, true };
+
+		boolean[] associationManagement() default { false, true };
+
+		boolean[] extendedEnhancement() default { false, true };
+	}
+
+	/**
+	 * The options of one run, as named in the hibernate-enhance-maven-plugin configuration.
+	 */
+	public static final class Enhancement {
+
+		private final boolean dirtyTracking;
+		private final boolean lazyInitialization;
+		private final boolean associationManagement;
+		private final boolean extendedEnhancement;
+
+		private Enhancement(boolean dirtyTracking, boolean lazyInitialization, boolean associationManagement, boolean extendedEnhancement) {
+			this.dirtyTracking = dirtyTracking;
+			this.lazyInitialization = lazyInitialization;
+			this.associationManagement = associationManagement;
+			this.extendedEnhancement = extendedEnhancement;
+		}
+
+		public boolean isDirtyTracking() {
+			return dirtyTracking;
+		}
+
+		public boolean isLazyInitialization() {
+			return lazyInitialization;
+		}
+
+		public boolean isAssociationManagement() {
+			return associationManagement;
+		}
+
+		public boolean isExtendedEnhancement() {
+			return extendedEnhancement;
+		}
+
+		private boolean isIn(Options options) {
+			return contains( options.dirtyTracking(), dirtyTracking )
+					&& contains( options.lazyInitialization(), lazyInitialization )
+					&& contains( options.associationManagement(), associationManagement )
+					&& contains( options.extendedEnhancement(), extendedEnhancement );
+		}
+
+		private boolean isBuildTimeDefault() {
+			return dirtyTracking && lazyInitialization && !associationManagement && !extendedEnhancement;
+		}
+
+		private static boolean contains(boolean[] values, boolean value) {
+			for ( boolean candidate : values ) {
+				if ( candidate == value ) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "dirtyTracking=" + dirtyTracking + ", lazyInitialization=" + lazyInitialization
+					+ ", associationManagement=" + associationManagement + ", extendedEnhancement=" + extendedEnhancement;
+		}
+	}
+
+	private static class EnhancementRunner extends CustomRunner {
+
+		private final Enhancement enhancement;
+
+		private EnhancementRunner(Class<?> klass, Enhancement enhancement) throws Exception {
+			super( klass );
+			this.enhancement = enhancement;
+		}
+
+		@Override
+		protected String getName() {
+			return enhancement == null ? "[not enhanced]" : "[" + enhancement + "]";
+		}
+
+		@Override
+		protected String testName(FrameworkMethod method) {
+			// Test names must be unique across runs, or reports merge them.
+			return method.getName() + getName();
+		}
+	}
+
+	/**
+	 * Enhances the test class and its nested classes, as the hibernate-enhance-maven-plugin would with the given options.
+	 * Other classes are shared with the parent class loader.
+	 */
+	private static class EnhancingClassLoader extends ClassLoader {
+
+		private final String testClassName;
+
+		private final Enhancer enhancer;
+
+		private EnhancingClassLoader(Class<?> testClass, Enhancement enhancement) {
+			super( testClass.getClassLoader() );
+			this.testClassName = testClass.getName();
+			this.enhancer = BytecodeProviderInitiator.buildDefaultBytecodeProvider().getEnhancer( new DefaultEnhancementContext() {
+				@Override
+				public ClassLoader getLoadingClassLoader() {
+					return getParent();
+				}
+
+				@Override
+				public boolean doBiDirectionalAssociationManagement(UnloadedField field) {
+					return enhancement.associationManagement;
+				}
+
+				@Override
+				public boolean doDirtyCheckingInline(UnloadedClass classDescriptor) {
+					return enhancement.dirtyTracking;
+				}
+
+				@Override
+				public boolean hasLazyLoadableAttributes(UnloadedClass classDescriptor) {
+					return enhancement.lazyInitialization;
+				}
+
+				@Override
+				public boolean isLazyLoadable(UnloadedField field) {
+					return enhancement.lazyInitialization;
+				}
+
+				@Override
+				public boolean doExtendedEnhancement(UnloadedClass classDescriptor) {
+					return enhancement.extendedEnhancement;
+				}
+			} );
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if ( !name.equals( testClassName ) && !name.startsWith( testClassName + "$" ) ) {
+				return super.loadClass( name, resolve );
+			}
+			synchronized ( getClassLoadingLock( name ) ) {
+				Class<?> loaded = findLoadedClass( name );
+				if ( loaded == null ) {
+					byte[] original;
+					try ( InputStream is = getParent().getResourceAsStream( name.replace( '.', '/' ) + ".class" ) ) {
+						if ( is == null ) {
+							throw new ClassNotFoundException( name );
+						}
+						original = is.readAllBytes();
+					}
+					catch (IOException e) {
+						throw new ClassNotFoundException( name, e );
+					}
+					byte[] enhanced = enhancer.enhance( name, original );
+					byte[] bytes = enhanced == null ? original : enhanced;
+					loaded = defineClass( name, bytes, 0, bytes.length );
+				}
+				if ( resolve ) {
+					resolveClass( loaded );
+				}
+				return loaded;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.stat.Statistics;
+
+import org.hibernate.testing.junit4.BaseCoreFunctionalTestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * This template demonstrates how to find out which bytecode enhancement options pay off for a given workload:
+ * {@link EnhancementMatrixRunner} runs it without enhancement, then under every combination of enhancement options.
+ * <p>
+ * Each run loads a large number of entities into one session, then reports the time taken to flush them
+ * while they are all clean, then while a few of them are dirty, which is where dirty checking dominates,
+ * and the number of statements triggered by reading lazy attributes afterwards.
+ * Set the {@code enhancement.entities} system property to change the number of managed entities:
+ * 50,000 by default with {@code -Denhancement.matrix=full}, and only 1,000 in the smoke test that runs with the build.
+ * All runs share the JVM: the first ones also pay for its warm-up.
+ * Each run builds its own SessionFactory, from its own enhanced entity classes, and closes it once done.
+ * <p>
+ * To compare the runs of another test class, annotate it with {@code @RunWith(EnhancementMatrixRunner.class)}.
+ */
+@RunWith(EnhancementMatrixRunner.class)
+public class EnhancementMatrixTestCase extends BaseCoreFunctionalTestCase {
+
+	private static final int ENTITIES = Integer.getInteger( "enhancement.entities",
+			EnhancementMatrixRunner.isFullMatrix() ? 50_000 : 1_000 );
+
+	private static final int BOOKS_PER_AUTHOR = 9;
+
+	// One in a hundred books is updated, then has its lazy attributes read.
+	private static final int SAMPLE_INTERVAL = 100;
+
+	// Each flush is repeated, and the fastest one is reported, to reduce the noise of JIT compilation and GC.
+	private static final int FLUSHES = 5;
+
+	@Override
+	protected Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Author.class, Book.class };
+	}
+
+	@Override
+	protected void configure(Configuration configuration) {
+		super.configure( configuration );
+
+		configuration.setProperty( AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString() );
+	}
+
+	@Test
+	public void largePersistenceContext() {
+		int authors = ENTITIES / ( BOOKS_PER_AUTHOR + 1 );
+		inTransaction( session -> {
+			session.createNativeMutationQuery( "insert into Author (id, name) select x, 'author ' || x from system_range(1, " + authors + ")" )
+					.executeUpdate();
+			session.createNativeMutationQuery( "insert into Book (id, title, summary, author_id)"
+					+ " select x, 'book ' || x, repeat('summary ', 100), 1 + mod(x, " + authors + ") from system_range(1, " + authors * BOOKS_PER_AUTHOR + ")" )
+					.executeUpdate();
+		} );
+		Statistics statistics = sessionFactory().getStatistics();
+
+		try ( Session session = openSession() ) {
+			session.beginTransaction();
+
+			long start = System.nanoTime();
+			session.createSelectionQuery( "from Author", Author.class ).getResultList();
+			List<Book> books = session.createSelectionQuery( "from Book", Book.class ).getResultList();
+			long load = System.nanoTime() - start;
+			int managed = session.unwrap( SessionImplementor.class ).getPersistenceContext().getNumberOfManagedEntities();
+
+			long cleanFlush = Long.MAX_VALUE;
+			for ( int i = 0; i < FLUSHES; i++ ) {
+				statistics.clear();
+				start = System.nanoTime();
+				session.flush();
+				cleanFlush = Math.min( cleanFlush, System.nanoTime() - start );
+				assertEquals( 0, statistics.getEntityUpdateCount() );
+			}
+
+			List<Book> sample = new ArrayList<>();
+			for ( int i = 0; i < books.size(); i += SAMPLE_INTERVAL ) {
+				sample.add( books.get( i ) );
+			}
+			long dirtyFlush = Long.MAX_VALUE;
+			for ( int i = 0; i < FLUSHES; i++ ) {
+				for ( Book book : sample ) {
+					book.setTitle( "book " + book.getId() + " (edition " + ( i + 2 ) + ")" );
+				}
+				statistics.clear();
+				start = System.nanoTime();
+				session.flush();
+				dirtyFlush = Math.min( dirtyFlush, System.nanoTime() - start );
+				assertEquals( sample.size(), statistics.getEntityUpdateCount() );
+			}
+
+			statistics.clear();
+			start = System.nanoTime();
+			for ( Book book : sample ) {
+				assertNotNull( book.getSummary() );
+				assertNotNull( book.getAuthor().getName() );
+			}
+			long lazyReads = System.nanoTime() - start;
+			long lazyStatements = statistics.getPrepareStatementCount();
+
+			log.infof( "%s: loaded %d entities in %d ms, clean flush %d ms, flush with %d updates %d ms,"
+							+ " %d lazy reads took %d statements and %d ms",
+					EnhancementMatrixRunner.currentEnhancement() == null ? "not enhanced" : EnhancementMatrixRunner.currentEnhancement(),
+					managed, millis( load ), millis( cleanFlush ), sample.size(), millis( dirtyFlush ),
+					sample.size(), lazyStatements, millis( lazyReads ) );
+
+			session.getTransaction().rollback();
+		}
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis( nanos );
+	}
+
+	// Entities are accessed through methods: without extended enhancement, direct field access bypasses lazy loading.
+	@Entity(name = "Author")
+	public static class Author {
+
+		@Id
+		private Long id;
+
+		private String name;
+
+		@OneToMany(mappedBy = "author")
+		private List<Book> books = new ArrayList<>();
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	@Entity(name = "Book")
+	public static class Book {
+
+		@Id
+		private Long id;
+
+		private String title;
+
+		@Basic(fetch = FetchType.LAZY)
+		@Column(length = 1000)
+		private String summary;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		private Author author;
+
+		public Long getId() {
+			return id;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public void setTitle(String title) {
+			this.title = title;
+		}
+
+		public String getSummary() {
+			return summary;
+		}
+
+		public Author getAuthor() {
+			return author;
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.hibernate.bugs;
+
+import java.lang.reflect.Field;
+
+import org.hibernate.Hibernate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * This template demonstrates how to reproduce an issue with a generated domain model:
+ * classes from {@link DomainModelGenerator#load()} go through {@link #getAnnotatedClasses()}, as in ORMUnitTestCase,
+ * and are used through reflection, since they have no accessors.
+ */
+public class GeneratedDomainModelTestCase extends SharedSessionFactoryTestCase {
+
+	// Three hierarchies of three entities, e.g. Entity3 extends Entity2 extends Entity1,
+	// each entity referencing the two generated before it.
+	private static final Class<?>[] ENTITIES = new DomainModelGenerator( "org.hibernate.bugs.generated.template" )
+			.entities( 9 ).fieldsPerEntity( 4 ).associationFanOut( 2 ).inheritanceDepth( 2 ).load();
+
+	@Override
+	protected Class<?>[] getAnnotatedClasses() {
+		return ENTITIES;
+	}
+
+	@Test
+	public void generatedDomainModel() throws Exception {
+		assertSame( ENTITIES[0], ENTITIES[1].getSuperclass() );
+		assertSame( ENTITIES[1], ENTITIES[2].getSuperclass() );
+		assertSame( Object.class, ENTITIES[3].getSuperclass() );
+
+		inTransaction( session -> {
+			Object entity1 = newEntity( ENTITIES[0], 1L );
+			Object entity2 = newEntity( ENTITIES[1], 2L );
+			set( entity2, "entity2Association1", entity1 );
+			Object entity3 = newEntity( ENTITIES[2], 3L );
+			set( entity3, "entity3Association1", entity2 );
+			set( entity3, "entity3Association2", entity1 );
+			set( entity3, "entity3Field4", "a value" );
+			session.persist( entity1 );
+			session.persist( entity2 );
+			session.persist( entity3 );
+		} );
+
+		inTransaction( session -> {
+			// Queries on the root of a hierarchy return its subclasses too.
+			assertEquals( 3L, (long) session.createSelectionQuery( "select count(e) from Entity1 e", Long.class ).getSingleResult() );
+			Object entity3 = session.find( ENTITIES[2], 3L );
+			assertEquals( "a value", get( entity3, "entity3Field4" ) );
+			Object association = get( entity3, "entity3Association2" );
+			assertEquals( 1L, session.getIdentifier( association ) );
+			assertSame( ENTITIES[0], Hibernate.unproxy( association ).getClass() );
+		} );
+	}
+
+	private static Object newEntity(Class<?> type, Long id) {
+		try {
+			Object entity = type.getDeclaredConstructor().newInstance();
+			set( entity, "id", id );
+			return entity;
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static void set(Object entity, String fieldName, Object value) {
+		try {
+			field( entity.getClass(), fieldName ).set( entity, value );
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static Object get(Object entity, String fieldName) {
+		try {
+			return field( entity.getClass(), fieldName ).get( entity );
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	// Fields are declared by the generated class that introduces them, e.g. the id by the root of the hierarchy.
+	private static Field field(Class<?> type, String fieldName) {
+		for ( Class<?> declaring = type; declaring != null; declaring = declaring.getSuperclass() ) {
+			try {
+				Field field = declaring.getDeclaredField( fieldName );
+				field.setAccessible( true );
+				return field;
+			}
+			catch (NoSuchFieldException e) {
+				// Look in the superclass.
+			}
+		}
+		throw new IllegalArgumentException( "No field " + fieldName + " in " + type );
+	}
+
+}
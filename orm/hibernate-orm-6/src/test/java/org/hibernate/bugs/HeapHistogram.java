@@ -0,0 +1,151 @@
+package org.hibernate.bugs;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The number of live instances, and the bytes they take, of each class on the heap,
+ * as {@code jcmd <pid> GC.class_histogram} would print them.
+ * <p>
+ * Each {@link #take()} triggers a full GC: the difference between two histograms is what was retained in between,
+ * by class. Classes are told apart by name only: the instances of same-named classes from different class loaders
+ * are added up. This requires a HotSpot JVM.
+ */
+public final class HeapHistogram {
+
+	private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+
+	// e.g. "   1:        123456       7890123  [B (java.base@17.0.9)"
+	private static final Pattern LINE = Pattern.compile( "^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+).*$", Pattern.MULTILINE );
+
+	private final Map<String, Entry> entries;
+
+	private HeapHistogram(Map<String, Entry> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * @return The histogram of the live objects on the heap, right after a full GC.
+	 */
+	public static HeapHistogram take() {
+		String histogram;
+		try {
+			histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+					new ObjectName( DIAGNOSTIC_COMMAND ),
+					"gcClassHistogram",
+					new Object[] { new String[0] },
+					new String[] { String[].class.getName() }
+			);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException( "Heap histograms require a HotSpot JVM", e );
+		}
+		Map<String, Entry> entries = new HashMap<>();
+		Matcher matcher = LINE.matcher( histogram );
+		while ( matcher.find() ) {
+			Entry entry = new Entry( matcher.group( 3 ), Long.parseLong( matcher.group( 1 ) ), Long.parseLong( matcher.group( 2 ) ) );
+			entries.merge( entry.className, entry, Entry::plus );
+		}
+		return new HeapHistogram( entries );
+	}
+
+	/**
+	 * @return What this histogram has more than {@code before}, by class. Classes with fewer instances are left out.
+	 */
+	public HeapHistogram minus(HeapHistogram before) {
+		Map<String, Entry> difference = new HashMap<>();
+		for ( Entry entry : entries.values() ) {
+			Entry previous = before.entries.get( entry.className );
+			Entry retained = previous == null ? entry : entry.minus( previous );
+			if ( retained.instances > 0 ) {
+				difference.put( entry.className, retained );
+			}
+		}
+		return new HeapHistogram( difference );
+	}
+
+	/**
+	 * @return This histogram, without the classes of {@code packagePrefix} (e.g. {@code org.h2.}), nor arrays of them.
+	 */
+	public HeapHistogram without(String packagePrefix) {
+		Map<String, Entry> kept = new HashMap<>();
+		for ( Entry entry : entries.values() ) {
+			// Arrays of objects are named e.g. "[[Lorg.h2.value.Value;".
+			String elementClassName = entry.className.replaceFirst( "^\\[+L", "" );
+			if ( !elementClassName.startsWith( packagePrefix ) ) {
+				kept.put( entry.className, entry );
+			}
+		}
+		return new HeapHistogram( kept );
+	}
+
+	public long getTotalBytes() {
+		long total = 0;
+		for ( Entry entry : entries.values() ) {
+			total += entry.bytes;
+		}
+		return total;
+	}
+
+	/**
+	 * @return The entries of this histogram, the most bytes first.
+	 */
+	public List<Entry> getEntries() {
+		List<Entry> sorted = new ArrayList<>( entries.values() );
+		sorted.sort( Comparator.comparingLong( Entry::getBytes ).reversed() );
+		return sorted;
+	}
+
+	/**
+	 * The instances of one class.
+	 */
+	public static final class Entry {
+
+		private final String className;
+		private final long instances;
+		private final long bytes;
+
+		private Entry(String className, long instances, long bytes) {
+			this.className = className;
+			this.instances = instances;
+			this.bytes = bytes;
+		}
+
+		private Entry plus(Entry other) {
+			return new Entry( className, instances + other.instances, bytes + other.bytes );
+		}
+
+		private Entry minus(Entry other) {
+			return new Entry( className, instances - other.instances, bytes - other.bytes );
+		}
+
+		/**
+		 * @return The name of the class, as the JVM prints it: e.g. {@code [Ljava.lang.Object;} for {@code Object[]}.
+		 */
+		public String getClassName() {
+			return className;
+		}
+
+		public long getInstances() {
+			return instances;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%,d instances, %,d bytes: %s", instances, bytes, className );
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package org.hibernate.bugs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Tracks the peak of the live heap, i.e. the heap used right after a full GC, from its creation on.
+ * <p>
+ * Each {@link #checkpoint()} triggers a full GC through {@link System#gc()}: call it at regular intervals,
+ * not in tight loops. This does not work with {@code -XX:+DisableExplicitGC}.
+ */
+public class HeapMonitor {
+
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+	private final long baseline;
+
+	private long peak;
+
+	public HeapMonitor() {
+		baseline = liveHeap();
+		peak = baseline;
+	}
+
+	/**
+	 * Samples the live heap.
+	 */
+	public void checkpoint() {
+		peak = Math.max( peak, liveHeap() );
+	}
+
+	/**
+	 * @return How much the live heap grew at its peak, in bytes, compared to when this monitor was created.
+	 */
+	public long getPeakGrowth() {
+		checkpoint();
+		return peak - baseline;
+	}
+
+	/**
+	 * @return The heap used right after a full GC, in bytes.
+	 */
+	public static long liveHeap() {
+		System.gc();
+		return MEMORY.getHeapMemoryUsage().getUsed();
+	}
+
+}
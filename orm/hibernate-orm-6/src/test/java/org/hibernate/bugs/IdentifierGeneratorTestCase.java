@@ -0,0 +1,248 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.TableGenerator;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This template demonstrates how to report a performance issue with identifier generation:
+ * several threads persist entities, in transactions of several entities each, with JDBC batching enabled,
+ * for each of IDENTITY, SEQUENCE with each optimizer (none, pooled, pooled-lo, hilo), TABLE and UUID generation.
+ * <p>
+ * For each generator, it reports the inserts per second, the statements spent on generating identifiers,
+ * the insert statements (IDENTITY disables JDBC batching), and where threads waited for a lock,
+ * such as that of the optimizer. Lock waits are recorded by {@link LockContentionRecorder} in a second run,
+ * so that the overhead of recording does not count in the inserts per second.
+ * Sequences and tables allocate 50 identifiers at a time, except without optimizer.
+ * Tune it with the {@code id.threads}, {@code id.inserts} and {@code id.transaction.size} system properties:
+ * 2,000 inserts by default, 20,000 with {@code -Dbenchmarks=full} (see {@link Benchmarks}).
+ */
+@RunWith(Parameterized.class)
+public class IdentifierGeneratorTestCase {
+
+	private static final Logger log = Logger.getLogger( IdentifierGeneratorTestCase.class );
+
+	private static final int THREADS = Integer.getInteger( "id.threads", 8 );
+
+	private static final int INSERTS = Benchmarks.size( "id.inserts", 20_000, 2_000 );
+
+	private static final int TRANSACTION_SIZE = Integer.getInteger( "id.transaction.size", 50 );
+
+	private static final int CONTENDED_SITES = 3;
+
+	private static final Map<String, String> SUMMARY = new LinkedHashMap<>();
+
+	@Parameterized.Parameters(name = "{0}")
+	public static List<Object[]> parameters() {
+		List<Object[]> parameters = new ArrayList<>();
+		parameters.add( new Object[] { "IDENTITY", IdentityEntity.class, (Supplier<Object>) IdentityEntity::new, null } );
+		for ( StandardOptimizerDescriptor optimizer : Arrays.asList( StandardOptimizerDescriptor.NONE, StandardOptimizerDescriptor.POOLED,
+				StandardOptimizerDescriptor.POOLED_LO, StandardOptimizerDescriptor.HILO ) ) {
+			parameters.add( new Object[] { "SEQUENCE " + optimizer.getExternalName(), SequenceEntity.class,
+					(Supplier<Object>) SequenceEntity::new, optimizer.getExternalName() } );
+		}
+		parameters.add( new Object[] { "TABLE pooled", TableEntity.class, (Supplier<Object>) TableEntity::new, null } );
+		parameters.add( new Object[] { "UUID", UuidEntity.class, (Supplier<Object>) UuidEntity::new, null } );
+		return parameters;
+	}
+
+	private final String generator;
+
+	private final Class<?> entityClass;
+
+	private final Supplier<Object> entityFactory;
+
+	private final String optimizer;
+
+	private SessionFactory sf;
+
+	public IdentifierGeneratorTestCase(String generator, Class<?> entityClass, Supplier<Object> entityFactory, String optimizer) {
+		this.generator = generator;
+		this.entityClass = entityClass;
+		this.entityFactory = entityFactory;
+		this.optimizer = optimizer;
+	}
+
+	@Before
+	public void setup() {
+		Map<String, Object> settings = new HashMap<>();
+		settings.put( AvailableSettings.HBM2DDL_AUTO, "create-drop" );
+		settings.put( AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf( TRANSACTION_SIZE ) );
+		// TABLE generation uses a second connection, isolated from the transaction of the insert.
+		settings.put( AvailableSettings.POOL_SIZE, String.valueOf( 2 * THREADS ) );
+		// Logging metrics for each of the thousands of sessions would serialize threads on the console.
+		settings.put( AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString() );
+		if ( optimizer != null ) {
+			settings.put( AvailableSettings.PREFERRED_POOLED_OPTIMIZER, optimizer );
+		}
+
+		sf = SessionFactoryCache.build( settings, entityClass );
+	}
+
+	@After
+	public void cleanup() {
+		sf.close();
+	}
+
+	@AfterClass
+	public static void summary() {
+		StringBuilder sb = new StringBuilder( String.format( "%d inserts on %d threads, %d per transaction, lock waits from a second, recorded run:%n",
+				INSERTS, THREADS, TRANSACTION_SIZE ) );
+		sb.append( String.format( "%-20s %10s %12s %12s %14s%n", "generator", "inserts/s", "id stmts", "insert stmts", "lock wait ms" ) );
+		SUMMARY.forEach( (generator, results) -> sb.append( String.format( "%-20s %s%n", generator, results ) ) );
+		log.info( sb );
+	}
+
+	@Test
+	public void throughput() throws Exception {
+		// Let the JIT compile the persist path before measuring anything.
+		insert( INSERTS / 4 );
+		deleteAll();
+
+		StatementRecorder.clear();
+		long start = System.nanoTime();
+		insert( INSERTS );
+		long nanos = System.nanoTime() - start;
+		List<StatementRecorder.RecordedStatement> statements = StatementRecorder.getStatements();
+		long insertStatements = statements.stream().filter( statement -> statement.getSql().startsWith( "insert" ) ).count();
+		long idStatements = statements.size() - insertStatements;
+
+		long rows = sf.fromTransaction( session -> session.createSelectionQuery( "select count(*) from " + entityClass.getSimpleName(), Long.class )
+				.getSingleResult() );
+		assertEquals( INSERTS, rows );
+
+		// Recording every lock wait, with its stack trace, slows the threads down:
+		// contention is recorded while inserting the same number of entities again, not while measuring throughput.
+		deleteAll();
+		List<JfrCallSiteRecorder.CallSite> contention;
+		try ( LockContentionRecorder recorder = new LockContentionRecorder() ) {
+			insert( INSERTS );
+			// Leave out the main thread, waiting for the workers.
+			contention = recorder.stop().stream()
+					.filter( site -> !site.getStack().startsWith( IdentifierGeneratorTestCase.class.getName() ) )
+					.collect( Collectors.toList() );
+		}
+		long lockWaitNanos = contention.stream().mapToLong( JfrCallSiteRecorder.CallSite::getTotalNanos ).sum();
+
+		double insertsPerSecond = INSERTS * 1_000_000_000.0 / nanos;
+		log.infof( "%s: %.0f inserts/s, %d statements to generate identifiers, %d insert statements, threads waited for locks %d ms in the recorded run%s",
+				generator, insertsPerSecond, idStatements, insertStatements, TimeUnit.NANOSECONDS.toMillis( lockWaitNanos ),
+				contention.isEmpty() ? "" : ", mostly:" );
+		contention.stream().limit( CONTENDED_SITES ).forEach( log::info );
+		SUMMARY.put( generator, String.format( "%10.0f %12d %12d %14d", insertsPerSecond, idStatements, insertStatements,
+				TimeUnit.NANOSECONDS.toMillis( lockWaitNanos ) ) );
+	}
+
+	private void deleteAll() {
+		sf.inTransaction( session -> session.createMutationQuery( "delete from " + entityClass.getSimpleName() ).executeUpdate() );
+	}
+
+	/**
+	 * Persists {@code count} entities on {@link #THREADS} threads, {@link #TRANSACTION_SIZE} per transaction.
+	 */
+	private void insert(int count) throws Exception {
+		AtomicInteger remaining = new AtomicInteger( count );
+		ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for ( int i = 0; i < THREADS; i++ ) {
+				workers.add( executor.submit( () -> {
+					for ( int batch; ( batch = Math.min( TRANSACTION_SIZE, remaining.getAndAdd( -TRANSACTION_SIZE ) ) ) > 0; ) {
+						int entities = batch;
+						sf.inTransaction( session -> persist( session, entities ) );
+					}
+					return null;
+				} ) );
+			}
+			for ( Future<?> worker : workers ) {
+				// Rethrows the first failure.
+				worker.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void persist(Session session, int entities) {
+		for ( int i = 0; i < entities; i++ ) {
+			session.persist( entityFactory.get() );
+		}
+	}
+
+	@Entity(name = "IdentityEntity")
+	public static class IdentityEntity {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.IDENTITY)
+		private Long id;
+
+		private String name = "identity";
+	}
+
+	@Entity(name = "SequenceEntity")
+	public static class SequenceEntity {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_entity_seq")
+		@SequenceGenerator(name = "sequence_entity_seq", allocationSize = 50)
+		private Long id;
+
+		private String name = "sequence";
+	}
+
+	@Entity(name = "TableEntity")
+	public static class TableEntity {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.TABLE, generator = "table_entity_gen")
+		@TableGenerator(name = "table_entity_gen", allocationSize = 50)
+		private Long id;
+
+		private String name = "table";
+	}
+
+	@Entity(name = "UuidEntity")
+	public static class UuidEntity {
+
+		@Id
+		@GeneratedValue
+		private UUID id;
+
+		private String name = "uuid";
+	}
+
+}
@@ -1,9 +1,13 @@
 package org.hibernate.bugs;
 
+import java.util.Collections;
+
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
 
+import org.hibernate.cfg.AvailableSettings;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,12 +21,16 @@ public class JPAUnitTestCase {
 
 	@Before
 	public void init() {
-		entityManagerFactory = Persistence.createEntityManagerFactory( "templatePU" );
+		// The EntityManagerFactory is built once, then shared with every test using the same persistence unit.
+		entityManagerFactory = SessionFactoryCache.getOrBuild( "templatePU", url ->
+				Persistence.createEntityManagerFactory( "templatePU", Collections.singletonMap( AvailableSettings.JAKARTA_JDBC_URL, url ) ) );
+		StatementRecorder.clear();
 	}
 
 	@After
 	public void destroy() {
-		entityManagerFactory.close();
+		StatementRecorder.dump();
+		SessionFactoryCache.truncate( entityManagerFactory );
 	}
 
 	// Entities are auto-discovered, so just add them anywhere on class-path
@@ -0,0 +1,175 @@
+package org.hibernate.bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Persistence;
+
+import org.hibernate.cfg.AvailableSettings;
+
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This template demonstrates how to report an issue with virtual threads, using the Java Persistence API:
+ * it runs the same {@link #workload(EntityManager, int)} in many EntityManagers at once, on platform threads
+ * then on virtual threads, and compares their throughput at increasing levels of concurrency.
+ * <p>
+ * While virtual threads run, {@link PinningRecorder} reports where Hibernate or the JDBC driver
+ * pin them to their carrier thread. Virtual threads require Java 21: on earlier JVMs, only platform threads run.
+ * Tune it with the {@code virtual.operations} and {@code virtual.concurrency} (e.g. {@code 1,8,64}) system properties:
+ * 1,000 operations by default, 5,000 with {@code -Dbenchmarks=full} (see {@link Benchmarks}).
+ */
+public class JPAVirtualThreadsTestCase {
+
+	private static final Logger log = Logger.getLogger( JPAVirtualThreadsTestCase.class );
+
+	private static final int OPERATIONS = Benchmarks.size( "virtual.operations", 5_000, 1_000 );
+
+	private static final int[] CONCURRENCY = Arrays.stream( System.getProperty( "virtual.concurrency", "1,8,64" ).split( "," ) )
+			.mapToInt( level -> Integer.parseInt( level.trim() ) )
+			.toArray();
+
+	private static final int PINNED_CALL_SITES = 10;
+
+	private EntityManagerFactory entityManagerFactory;
+
+	@Before
+	public void init() {
+		Map<String, Object> settings = new HashMap<>();
+		// Logging metrics for each of the thousands of EntityManagers would serialize threads on the console.
+		settings.put( AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString() );
+		// Nested entities are not scanned: see TopLevelClassScanner.
+		settings.put( AvailableSettings.LOADED_CLASSES, Collections.singletonList( Note.class ) );
+		entityManagerFactory = SessionFactoryCache.getOrBuild( Arrays.asList( "templatePU", settings ), url -> {
+			Map<String, Object> properties = new HashMap<>( settings );
+			properties.put( AvailableSettings.JAKARTA_JDBC_URL, url );
+			return Persistence.createEntityManagerFactory( "templatePU", properties );
+		} );
+	}
+
+	@After
+	public void destroy() {
+		SessionFactoryCache.truncate( entityManagerFactory );
+	}
+
+	// Put here what each EntityManager does, in its own transaction: called concurrently, OPERATIONS times per run.
+	private void workload(EntityManager entityManager, int operation) {
+		entityManager.persist( new Note( "note " + operation ) );
+		entityManager.createQuery( "select count(n) from Note n where n.text = :text", Long.class )
+				.setParameter( "text", "note " + operation )
+				.getSingleResult();
+	}
+
+	@Test
+	public void scaling() throws Exception {
+		// Let the JIT compile the ORM path before measuring anything.
+		throughput( Executors.newFixedThreadPool( CONCURRENCY[CONCURRENCY.length - 1] ), CONCURRENCY[CONCURRENCY.length - 1] );
+
+		// Platform and virtual threads alternate at each level of concurrency, so that they run in similar conditions.
+		double[] platform = new double[CONCURRENCY.length];
+		double[] virtual = new double[CONCURRENCY.length];
+		if ( VirtualThreads.isAvailable() ) {
+			// Only virtual threads get pinned: recording costs platform threads nothing.
+			try ( PinningRecorder pinning = new PinningRecorder() ) {
+				for ( int i = 0; i < CONCURRENCY.length; i++ ) {
+					platform[i] = throughput( Executors.newFixedThreadPool( CONCURRENCY[i] ), CONCURRENCY[i] );
+					virtual[i] = throughput( VirtualThreads.newExecutor(), CONCURRENCY[i] );
+				}
+				List<JfrCallSiteRecorder.CallSite> callSites = pinning.stop();
+				log.infof( "%d call sites pinned virtual threads%s", callSites.size(), callSites.isEmpty() ? "" : ", the top ones:" );
+				callSites.stream().limit( PINNED_CALL_SITES ).forEach( log::info );
+			}
+		}
+		else {
+			for ( int i = 0; i < CONCURRENCY.length; i++ ) {
+				platform[i] = throughput( Executors.newFixedThreadPool( CONCURRENCY[i] ), CONCURRENCY[i] );
+			}
+			log.infof( "Virtual threads require Java 21, running %s: only platform threads were measured", System.getProperty( "java.version" ) );
+		}
+
+		StringBuilder sb = new StringBuilder( String.format( "Throughput of %d operations, in operations/s:%n", OPERATIONS ) );
+		sb.append( String.format( "%12s %10s %10s %7s%n", "concurrency", "platform", "virtual", "ratio" ) );
+		for ( int i = 0; i < CONCURRENCY.length; i++ ) {
+			if ( virtual[i] > 0 ) {
+				sb.append( String.format( "%12d %10.0f %10.0f %7.2f%n", CONCURRENCY[i], platform[i], virtual[i], virtual[i] / platform[i] ) );
+			}
+			else {
+				sb.append( String.format( "%12d %10.0f %10s %7s%n", CONCURRENCY[i], platform[i], "-", "-" ) );
+			}
+		}
+		log.info( sb );
+	}
+
+	/**
+	 * Runs {@link #OPERATIONS} operations on {@code concurrency} threads of {@code executor}, then shuts it down.
+	 * Each run starts from empty tables, so that the queries of the workload cost the same in every run.
+	 *
+	 * @return The number of operations per second.
+	 */
+	private double throughput(ExecutorService executor, int concurrency) throws Exception {
+		SessionFactoryCache.truncate( entityManagerFactory );
+		AtomicInteger nextOperation = new AtomicInteger();
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for ( int i = 0; i < concurrency; i++ ) {
+				workers.add( executor.submit( () -> {
+					for ( int operation; ( operation = nextOperation.getAndIncrement() ) < OPERATIONS; ) {
+						EntityManager entityManager = entityManagerFactory.createEntityManager();
+						try {
+							entityManager.getTransaction().begin();
+							workload( entityManager, operation );
+							entityManager.getTransaction().commit();
+						}
+						finally {
+							entityManager.close();
+						}
+					}
+					return null;
+				} ) );
+			}
+			for ( Future<?> worker : workers ) {
+				// Rethrows the first failure.
+				worker.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return OPERATIONS * 1_000_000_000.0 / ( System.nanoTime() - start );
+	}
+
+	@Entity(name = "Note")
+	public static class Note {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		private String text;
+
+		protected Note() {
+		}
+
+		public Note(String text) {
+			this.text = text;
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+package org.hibernate.bugs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records Java Flight Recorder events with their stack trace, and groups them by call site:
+ * the top frames of the stack, once the JDK frames at its top (Thread.park &amp; co.) are skipped.
+ * Events raised inside the JDK only, such as threads of a pool waiting for tasks, are left out.
+ * <p>
+ * JFR only records events that last longer than a threshold, 20 ms by default for most events:
+ * pass {@link Duration#ZERO} to see short but frequent events, at the cost of slowing the code under test down.
+ */
+public final class JfrCallSiteRecorder implements AutoCloseable {
+
+	private static final String[] JDK_PACKAGES = { "java.", "javax.", "jdk.", "sun." };
+
+	private final Recording recording = new Recording();
+
+	private final int frames;
+
+	/**
+	 * Starts recording.
+	 *
+	 * @param threshold The shortest event to record.
+	 * @param frames How many frames identify a call site.
+	 * @param events The names of the JFR events to record, e.g. {@code jdk.JavaMonitorEnter}.
+	 */
+	public JfrCallSiteRecorder(Duration threshold, int frames, String... events) {
+		this.frames = frames;
+		for ( String event : events ) {
+			recording.enable( event ).withThreshold( threshold ).withStackTrace();
+		}
+		recording.start();
+	}
+
+	/**
+	 * Stops recording.
+	 *
+	 * @return The call sites of the recorded events, the longest total duration first.
+	 */
+	public List<CallSite> stop() {
+		recording.stop();
+		Map<String, CallSite> callSites = new LinkedHashMap<>();
+		try {
+			Path file = Files.createTempFile( "recording", ".jfr" );
+			try {
+				recording.dump( file );
+				for ( RecordedEvent event : RecordingFile.readAllEvents( file ) ) {
+					String stack = callSite( event );
+					if ( stack != null ) {
+						callSites.computeIfAbsent( stack, CallSite::new ).add( event.getDuration().toNanos() );
+					}
+				}
+			}
+			finally {
+				Files.deleteIfExists( file );
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException( e );
+		}
+		List<CallSite> sorted = new ArrayList<>( callSites.values() );
+		sorted.sort( Comparator.comparingLong( CallSite::getTotalNanos ).reversed() );
+		return sorted;
+	}
+
+	@Override
+	public void close() {
+		recording.close();
+	}
+
+	/**
+	 * @return The top frames from the first one outside the JDK, or {@code null} if there is none.
+	 */
+	private String callSite(RecordedEvent event) {
+		if ( event.getStackTrace() == null ) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		int count = 0;
+		for ( RecordedFrame frame : event.getStackTrace().getFrames() ) {
+			String type = frame.getMethod().getType().getName();
+			if ( count == 0 && isJdk( type ) ) {
+				continue;
+			}
+			if ( count > 0 ) {
+				sb.append( "\n\tat " );
+			}
+			sb.append( type ).append( '.' ).append( frame.getMethod().getName() ).append( ':' ).append( frame.getLineNumber() );
+			if ( ++count == frames ) {
+				break;
+			}
+		}
+		return count == 0 ? null : sb.toString();
+	}
+
+	private static boolean isJdk(String type) {
+		for ( String jdkPackage : JDK_PACKAGES ) {
+			if ( type.startsWith( jdkPackage ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The events recorded with the same top stack frames, JDK frames aside.
+	 */
+	public static final class CallSite {
+
+		private final String stack;
+		private long count;
+		private long totalNanos;
+
+		private CallSite(String stack) {
+			this.stack = stack;
+		}
+
+		private void add(long nanos) {
+			count++;
+			totalNanos += nanos;
+		}
+
+		/**
+		 * @return The frames of the call site, the first one outside the JDK first.
+		 */
+		public String getStack() {
+			return stack;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%d times for %d us in total at %s", count, TimeUnit.NANOSECONDS.toMicros( totalNanos ), stack );
+		}
+	}
+
+}
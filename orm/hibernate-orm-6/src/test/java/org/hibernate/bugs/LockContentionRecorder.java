@@ -0,0 +1,37 @@
+package org.hibernate.bugs;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Records, through Java Flight Recorder, where threads block on a contended lock: a {@code synchronized} monitor,
+ * a {@link java.util.concurrent.locks.Lock} and other synchronizers that park threads,
+ * or a lock that makes threads {@link Object#wait()}, such as the row locks of H2.
+ * Events are grouped by the first frame outside the JDK, i.e. the code that asked for the lock.
+ * <p>
+ * Typical usage: create a recorder, run the code under test on several threads, then log {@link #stop()}.
+ * Threads of a pool waiting for tasks park too, but inside the JDK only: they are left out.
+ * <p>
+ * Every wait is recorded with its stack trace, which slows contended code down:
+ * do not time the code under test while recording, but run it again to find where it waits.
+ */
+public final class LockContentionRecorder implements AutoCloseable {
+
+	private final JfrCallSiteRecorder recorder = new JfrCallSiteRecorder( Duration.ZERO, 1, "jdk.JavaMonitorEnter", "jdk.ThreadPark",
+			"jdk.JavaMonitorWait" );
+
+	/**
+	 * Stops recording.
+	 *
+	 * @return The call sites that waited for a lock, the longest total wait first.
+	 */
+	public List<JfrCallSiteRecorder.CallSite> stop() {
+		return recorder.stop();
+	}
+
+	@Override
+	public void close() {
+		recorder.close();
+	}
+
+}
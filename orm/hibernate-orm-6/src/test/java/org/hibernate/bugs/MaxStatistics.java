@@ -0,0 +1,46 @@
+package org.hibernate.bugs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares upper bounds for the Hibernate statistics recorded by {@link StatisticsRule} during a test:
+ * the test fails if any of them is exceeded. Negative values, the default, mean "no bound".
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MaxStatistics {
+
+	/**
+	 * @return The maximum number of JDBC statements prepared.
+	 */
+	long statements() default -1;
+
+	/**
+	 * @return The maximum number of entities loaded from the database.
+	 */
+	long entityLoads() default -1;
+
+	/**
+	 * @return The maximum number of collections fetched from the database.
+	 */
+	long collectionFetches() default -1;
+
+	/**
+	 * @return The maximum number of second-level cache hits.
+	 */
+	long secondLevelCacheHits() default -1;
+
+	/**
+	 * @return The maximum number of second-level cache misses.
+	 */
+	long secondLevelCacheMisses() default -1;
+
+	/**
+	 * @return The maximum number of session flushes.
+	 */
+	long flushes() default -1;
+
+}
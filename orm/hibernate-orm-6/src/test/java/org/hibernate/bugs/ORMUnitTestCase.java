@@ -17,9 +17,10 @@ package org.hibernate.bugs;
 
 import org.hibernate.Session;
 import org.hibernate.Transaction;
-import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
-import org.hibernate.testing.junit4.BaseCoreFunctionalTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
 /**
@@ -29,11 +30,16 @@ import org.junit.Test;
  * simplifies the process.
  *
  * What's even better?  Fork hibernate-orm itself, add your test case directly to a module's unit tests, then
- * submit it as a PR!
+ * submit it as a PR! Just replace SharedSessionFactoryTestCase with BaseCoreFunctionalTestCase when doing so.
  */
-public class ORMUnitTestCase extends BaseCoreFunctionalTestCase {
+public class ORMUnitTestCase extends SharedSessionFactoryTestCase {
+
+	// Records Hibernate statistics for each test, and checks the bounds declared with @MaxStatistics.
+	@Rule
+	public final StatisticsRule statistics = new StatisticsRule( this::sessionFactory );
 
 	// Add your entities here.
+	// To reproduce an issue that depends on the size of the domain model, return classes from DomainModelGenerator instead.
 	@Override
 	protected Class[] getAnnotatedClasses() {
 		return new Class[] {
@@ -60,16 +66,25 @@ public class ORMUnitTestCase extends BaseCoreFunctionalTestCase {
 	@Override
 	protected void configure(Configuration configuration) {
 		super.configure( configuration );
+	}
+
+	// StatementRecorder captures the SQL executed by each test, and logs a summary before test data is cleaned up.
+	@Before
+	public void clearStatements() {
+		StatementRecorder.clear();
+	}
 
-		configuration.setProperty( AvailableSettings.SHOW_SQL, Boolean.TRUE.toString() );
-		configuration.setProperty( AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString() );
-		//configuration.setProperty( AvailableSettings.GENERATE_STATISTICS, "true" );
+	@After
+	public void dumpStatements() {
+		StatementRecorder.dump();
 	}
 
 	// Add your tests, using standard JUnit.
+	// Use @MaxStatistics to make the test fail on too many statements, entity loads, etc. (e.g. an N+1 select), e.g.:
+	// @MaxStatistics(statements = 2)
 	@Test
 	public void hhh123Test() throws Exception {
-		// BaseCoreFunctionalTestCase automatically creates the SessionFactory and provides the Session.
+		// SharedSessionFactoryTestCase automatically creates (or reuses) the SessionFactory and provides the Session.
 		Session s = openSession();
 		Transaction tx = s.beginTransaction();
 		// Do stuff...
@@ -0,0 +1,76 @@
+package org.hibernate.bugs;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures the wall time and the heap allocations of the successive phases of a single-threaded process,
+ * such as bootstrap.
+ * <p>
+ * Allocations are those of the current thread, as reported by the HotSpot {@link ThreadMXBean}:
+ * work delegated to other threads is not accounted for.
+ */
+public class PhaseProfiler {
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final Map<String, long[]> phases = new LinkedHashMap<>();
+
+	public void measure(String phase, Runnable action) {
+		measure( phase, () -> {
+			action.run();
+			return null;
+		} );
+	}
+
+	/**
+	 * Runs {@code action}, adding its wall time and allocations to those already measured for {@code phase}.
+	 *
+	 * @return The result of {@code action}.
+	 */
+	public <T> T measure(String phase, Supplier<T> action) {
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = THREADS.getThreadAllocatedBytes( threadId );
+		long start = System.nanoTime();
+		try {
+			return action.get();
+		}
+		finally {
+			long nanos = System.nanoTime() - start;
+			long allocated = THREADS.getThreadAllocatedBytes( threadId ) - allocatedBefore;
+			long[] measures = phases.computeIfAbsent( phase, name -> new long[2] );
+			measures[0] += nanos;
+			measures[1] += allocated;
+		}
+	}
+
+	/**
+	 * @return The phases measured so far, in the order they were first measured.
+	 */
+	public List<String> getPhases() {
+		return new ArrayList<>( phases.keySet() );
+	}
+
+	/**
+	 * @return The wall time of {@code phase}, in nanoseconds, or 0 if it was not measured.
+	 */
+	public long getNanos(String phase) {
+		long[] measures = phases.get( phase );
+		return measures == null ? 0 : measures[0];
+	}
+
+	/**
+	 * @return The bytes allocated during {@code phase}, or 0 if it was not measured.
+	 */
+	public long getAllocatedBytes(String phase) {
+		long[] measures = phases.get( phase );
+		return measures == null ? 0 : measures[1];
+	}
+
+}
@@ -0,0 +1,33 @@
+package org.hibernate.bugs;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Records, through Java Flight Recorder, where virtual threads get pinned to their carrier thread,
+ * i.e. block inside a {@code synchronized} block or a native method, and groups these events by call site.
+ * <p>
+ * Typical usage: create a recorder, run the code under test on virtual threads, then log {@link #stop()}.
+ * The {@code jdk.VirtualThreadPinned} event only exists from Java 21 on: earlier JVMs record nothing.
+ */
+public final class PinningRecorder implements AutoCloseable {
+
+	private static final int FRAMES = 6;
+
+	private final JfrCallSiteRecorder recorder = new JfrCallSiteRecorder( Duration.ZERO, FRAMES, "jdk.VirtualThreadPinned" );
+
+	/**
+	 * Stops recording.
+	 *
+	 * @return The call sites that pinned virtual threads, the longest total pinning first.
+	 */
+	public List<JfrCallSiteRecorder.CallSite> stop() {
+		return recorder.stop();
+	}
+
+	@Override
+	public void close() {
+		recorder.close();
+	}
+
+}
@@ -27,7 +27,8 @@ import org.hibernate.loader.BatchFetchStyle;
 import org.hibernate.query.NullPrecedence;
 
 import org.hibernate.testing.bytecode.enhancement.BytecodeEnhancerRunner;
-import org.hibernate.testing.junit4.BaseCoreFunctionalTestCase;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -35,10 +36,10 @@ import org.junit.runner.RunWith;
  * This template demonstrates how to develop a test case for Hibernate ORM, using its built-in unit test framework.
  * <p>
  * What's even better?  Fork hibernate-orm itself, add your test case directly to a module's unit tests, then
- * submit it as a PR!
+ * submit it as a PR! Just replace SharedSessionFactoryTestCase with BaseCoreFunctionalTestCase when doing so.
  */
 @RunWith(BytecodeEnhancerRunner.class) // This runner enables bytecode enhancement for your test.
-public class QuarkusLikeORMUnitTestCase extends BaseCoreFunctionalTestCase {
+public class QuarkusLikeORMUnitTestCase extends SharedSessionFactoryTestCase {
 
 	// Add your entities here.
 	@Override
@@ -54,9 +55,6 @@ public class QuarkusLikeORMUnitTestCase extends BaseCoreFunctionalTestCase {
 	protected void configure(Configuration configuration) {
 		super.configure( configuration );
 
-		// For your own convenience to see generated queries:
-		configuration.setProperty( AvailableSettings.SHOW_SQL, Boolean.TRUE.toString() );
-		configuration.setProperty( AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString() );
 		//configuration.setProperty( AvailableSettings.GENERATE_STATISTICS, "true" );
 
 		// Other settings that will make your test case run under similar configuration that Quarkus is using by default:
@@ -72,10 +70,21 @@ public class QuarkusLikeORMUnitTestCase extends BaseCoreFunctionalTestCase {
 		// configuration.setProperty( AvailableSettings.SOME_CONFIGURATION_PROPERTY, "SOME_VALUE" );
 	}
 
+	// StatementRecorder captures the SQL executed by each test, and logs a summary before test data is cleaned up.
+	@Before
+	public void clearStatements() {
+		StatementRecorder.clear();
+	}
+
+	@After
+	public void dumpStatements() {
+		StatementRecorder.dump();
+	}
+
 	// Add your tests, using standard JUnit.
 	@Test
 	public void hhh123Test() throws Exception {
-		// BaseCoreFunctionalTestCase automatically creates the SessionFactory and provides the Session.
+		// SharedSessionFactoryTestCase automatically creates (or reuses) the SessionFactory and provides the Session.
 		Session s = openSession();
 		Transaction tx = s.beginTransaction();
 		// Do stuff...
@@ -0,0 +1,260 @@
+package org.hibernate.bugs;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.ParameterExpression;
+import jakarta.persistence.criteria.Root;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.jdbc.dialect.spi.DialectResolutionInfo;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.sql.ast.SqlAstTranslator;
+import org.hibernate.sql.ast.SqlAstTranslatorFactory;
+import org.hibernate.sql.ast.tree.MutationStatement;
+import org.hibernate.sql.ast.tree.select.SelectStatement;
+import org.hibernate.sql.exec.spi.JdbcOperationQueryMutation;
+import org.hibernate.sql.exec.spi.JdbcOperationQuerySelect;
+import org.hibernate.sql.model.ast.TableMutation;
+import org.hibernate.sql.model.jdbc.JdbcMutationOperation;
+
+import org.jboss.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This template demonstrates how to report an issue with the query plan cache, such as cache thrashing:
+ * it runs a population of distinct HQL and Criteria queries, picked with a Zipf distribution,
+ * each with an IN list of random length, once without then once with {@code hibernate.query.in_clause_parameter_padding}.
+ * <p>
+ * For each run, it reports the number of SQL translations, the number of distinct SQL statements sent to the database,
+ * and the throughput. Hibernate ORM 6 caches the interpretation of each HQL string, whether padding is enabled or not,
+ * but queries with multi-valued parameters, and Criteria queries, get no cached SQL: IN lists are expanded,
+ * then translated to SQL, for each execution. Padding the IN lists reduces the number of distinct SQL statements,
+ * and so the work of the database and of the JDBC statement caches, rather than the number of translations.
+ * <p>
+ * Tune it with the following system properties: {@code plan.cache.max.size} ({@code hibernate.query.plan_cache_max_size}),
+ * {@code plan.queries} (distinct queries), {@code plan.zipf.exponent} (the higher, the fewer queries run most often),
+ * {@code plan.criteria.ratio}, {@code plan.in.max} (longest IN list) and {@code plan.executions}.
+ * By default, 512 distinct queries run 1,000 times, and 4,096 distinct queries 20,000 times with {@code -Dbenchmarks=full}
+ * (see {@link Benchmarks}).
+ */
+@RunWith(Parameterized.class)
+public class QueryPlanCacheTestCase {
+
+	private static final Logger log = Logger.getLogger( QueryPlanCacheTestCase.class );
+
+	private static final int PLAN_CACHE_MAX_SIZE = Integer.getInteger( "plan.cache.max.size", 2048 );
+
+	private static final int QUERIES = Benchmarks.size( "plan.queries", 4096, 512 );
+
+	private static final double ZIPF_EXPONENT = Double.parseDouble( System.getProperty( "plan.zipf.exponent", "1.0" ) );
+
+	private static final double CRITERIA_RATIO = Double.parseDouble( System.getProperty( "plan.criteria.ratio", "0.2" ) );
+
+	private static final int IN_MAX = Integer.getInteger( "plan.in.max", 50 );
+
+	private static final int EXECUTIONS = Benchmarks.size( "plan.executions", 20_000, 1_000 );
+
+	private static final int PRODUCTS = 1_000;
+
+	@Parameterized.Parameters(name = "inClauseParameterPadding={0}")
+	public static List<Boolean> parameters() {
+		return Arrays.asList( false, true );
+	}
+
+	private final boolean padding;
+
+	private SessionFactory sf;
+
+	public QueryPlanCacheTestCase(boolean padding) {
+		this.padding = padding;
+	}
+
+	@Before
+	public void setup() {
+		Map<String, Object> settings = new HashMap<>();
+		settings.put( AvailableSettings.HBM2DDL_AUTO, "create-drop" );
+		settings.put( AvailableSettings.DIALECT, TranslationCountingDialect.class.getName() );
+		settings.put( AvailableSettings.QUERY_PLAN_CACHE_MAX_SIZE, String.valueOf( PLAN_CACHE_MAX_SIZE ) );
+		settings.put( AvailableSettings.IN_CLAUSE_PARAMETER_PADDING, String.valueOf( padding ) );
+
+		sf = SessionFactoryCache.build( settings, Product.class );
+		sf.inTransaction( session -> session.createNativeMutationQuery(
+				"insert into PlanCacheProduct (id, name, price, stock) select x, 'product ' || x, x / 10.0, mod(x, 100) from system_range(1, " + PRODUCTS + ")" )
+				.executeUpdate() );
+	}
+
+	@After
+	public void cleanup() {
+		// Each run has its own plan cache: do not keep the other one around.
+		sf.close();
+	}
+
+	@Test
+	public void planCache() {
+		ZipfDistribution queries = new ZipfDistribution( QUERIES, ZIPF_EXPONENT );
+		Random random = new Random( 42 );
+
+		// Fill the cache, and let the JIT compile the query path, before measuring.
+		run( EXECUTIONS / 2, queries, random );
+
+		TranslationCountingDialect.SELECT_TRANSLATIONS.reset();
+		StatementRecorder.clear();
+		long start = System.nanoTime();
+		long rows = run( EXECUTIONS, queries, random );
+		long nanos = System.nanoTime() - start;
+
+		long translations = TranslationCountingDialect.SELECT_TRANSLATIONS.sum();
+		long distinctSql = StatementRecorder.getStatements().stream().map( StatementRecorder.RecordedStatement::getSql ).distinct().count();
+
+		log.infof( "IN clause parameter padding %s, %d distinct queries, plan cache of %d:%n"
+						+ "\t%.0f executions/s, %d SQL translations for %d executions, %d distinct SQL statements",
+				padding ? "on" : "off", QUERIES, PLAN_CACHE_MAX_SIZE,
+				EXECUTIONS * 1_000_000_000.0 / nanos, translations, EXECUTIONS, distinctSql );
+		assertTrue( rows > 0 );
+	}
+
+	/**
+	 * @return The number of rows returned by the {@code executions} queries.
+	 */
+	private long run(int executions, ZipfDistribution queries, Random random) {
+		long rows = 0;
+		try ( Session session = sf.openSession() ) {
+			for ( int i = 0; i < executions; i++ ) {
+				int rank = queries.sample( random );
+				List<Long> ids = new ArrayList<>();
+				for ( int length = 1 + random.nextInt( IN_MAX ); ids.size() < length; ) {
+					ids.add( 1L + random.nextInt( PRODUCTS ) );
+				}
+				rows += ( isCriteria( rank ) ? criteria( session, rank, ids ) : hql( session, rank, ids ) ).size();
+				session.clear();
+			}
+		}
+		return rows;
+	}
+
+	private static boolean isCriteria(int rank) {
+		// Spread Criteria queries evenly over ranks, i.e. over frequent and rare queries.
+		return (int) ( ( rank + 1 ) * CRITERIA_RATIO ) > (int) ( rank * CRITERIA_RATIO );
+	}
+
+	private static List<Product> hql(Session session, int rank, List<Long> ids) {
+		// The literal makes each query distinct, as with queries built by string concatenation.
+		return session.createSelectionQuery( "from PlanCacheProduct p where p.id in :ids and p.stock >= " + rank % 100
+						+ ( rank / 100 % 2 == 0 ? " order by p.name" : " order by p.price" ) + " offset " + rank / 200 + " rows",
+				Product.class )
+				.setParameter( "ids", ids )
+				.getResultList();
+	}
+
+	private static List<Product> criteria(Session session, int rank, List<Long> ids) {
+		CriteriaBuilder cb = session.getCriteriaBuilder();
+		CriteriaQuery<Product> query = cb.createQuery( Product.class );
+		Root<Product> product = query.from( Product.class );
+		// Class literals cannot be parameterized: List.class is the only class of a List<Long>.
+		@SuppressWarnings("unchecked")
+		Class<List<Long>> idsType = (Class<List<Long>>) (Class<?>) List.class;
+		ParameterExpression<List<Long>> idsParameter = cb.parameter( idsType, "ids" );
+		query.where( product.get( "id" ).in( idsParameter ), cb.ge( product.get( "stock" ), rank % 100 ) )
+				.orderBy( cb.asc( product.get( rank / 100 % 2 == 0 ? "name" : "price" ) ) );
+		return session.createQuery( query )
+				.setParameter( idsParameter, ids )
+				.setFirstResult( rank / 200 )
+				.getResultList();
+	}
+
+	/**
+	 * Samples ranks from 0 to {@code size - 1}: rank k is picked with a probability proportional to 1 / (k + 1)^exponent.
+	 */
+	private static final class ZipfDistribution {
+
+		private final double[] cumulative;
+
+		private ZipfDistribution(int size, double exponent) {
+			cumulative = new double[size];
+			double sum = 0;
+			for ( int k = 0; k < size; k++ ) {
+				sum += 1.0 / Math.pow( k + 1, exponent );
+				cumulative[k] = sum;
+			}
+			for ( int k = 0; k < size; k++ ) {
+				cumulative[k] /= sum;
+			}
+		}
+
+		private int sample(Random random) {
+			int index = Arrays.binarySearch( cumulative, random.nextDouble() );
+			return Math.min( index < 0 ? -index - 1 : index, cumulative.length - 1 );
+		}
+	}
+
+	/**
+	 * Counts the SQL translations of selections, which Hibernate ORM has no statistic for.
+	 */
+	public static class TranslationCountingDialect extends H2Dialect {
+
+		private static final LongAdder SELECT_TRANSLATIONS = new LongAdder();
+
+		public TranslationCountingDialect(DialectResolutionInfo info) {
+			super( info );
+		}
+
+		@Override
+		public SqlAstTranslatorFactory getSqlAstTranslatorFactory() {
+			SqlAstTranslatorFactory delegate = super.getSqlAstTranslatorFactory();
+			return new SqlAstTranslatorFactory() {
+				@Override
+				public SqlAstTranslator<JdbcOperationQuerySelect> buildSelectTranslator(SessionFactoryImplementor sessionFactory,
+						SelectStatement statement) {
+					SELECT_TRANSLATIONS.increment();
+					return delegate.buildSelectTranslator( sessionFactory, statement );
+				}
+
+				@Override
+				public SqlAstTranslator<? extends JdbcOperationQueryMutation> buildMutationTranslator(
+						SessionFactoryImplementor sessionFactory, MutationStatement statement) {
+					return delegate.buildMutationTranslator( sessionFactory, statement );
+				}
+
+				@Override
+				public <O extends JdbcMutationOperation> SqlAstTranslator<O> buildModelMutationTranslator(TableMutation<O> mutation,
+						SessionFactoryImplementor sessionFactory) {
+					return delegate.buildModelMutationTranslator( mutation, sessionFactory );
+				}
+			};
+		}
+	}
+
+	@Entity(name = "PlanCacheProduct")
+	public static class Product {
+
+		@Id
+		private Long id;
+
+		private String name;
+
+		private BigDecimal price;
+
+		private int stock;
+	}
+
+}
@@ -0,0 +1,226 @@
+package org.hibernate.bugs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+
+/**
+ * The default Hibernate connection pool, recording every statement executed on its connections
+ * into {@link StatementRecorder}. Enabled in resources/hibernate.properties.
+ * <p>
+ * When all connections are in use, the default pool fails right away: this one makes callers wait
+ * for a connection instead, as production pools do, and keeps track of the time spent waiting.
+ */
+public class RecordingConnectionProvider extends DriverManagerConnectionProviderImpl {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String LEGACY_URL = "hibernate.connection.url";
+
+	private static final long ACQUISITION_TIMEOUT_SECONDS = 30;
+
+	private static final LongAdder ACQUISITIONS = new LongAdder();
+
+	private static final LongAdder WAIT_NANOS = new LongAdder();
+
+	private static final LongAccumulator MAX_WAIT_NANOS = new LongAccumulator( Math::max, 0 );
+
+	private Semaphore available;
+
+	@Override
+	public void configure(Map<String, Object> configurationValues) {
+		Object url = configurationValues.get( AvailableSettings.JAKARTA_JDBC_URL );
+		if ( url != null ) {
+			// The default pool only reads the legacy hibernate.connection.url, which resources/hibernate.properties
+			// still sets for hibernate-testing: the JPA setting, that tests override, takes precedence over it.
+			configurationValues = new HashMap<>( configurationValues );
+			configurationValues.put( LEGACY_URL, url );
+		}
+		super.configure( configurationValues );
+		available = new Semaphore( ConfigurationHelper.getInt( AvailableSettings.POOL_SIZE, configurationValues, 20 ), true );
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			if ( !available.tryAcquire( ACQUISITION_TIMEOUT_SECONDS, TimeUnit.SECONDS ) ) {
+				throw new SQLException( "No connection became available within " + ACQUISITION_TIMEOUT_SECONDS + " seconds" );
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException( "Interrupted while waiting for a connection", e );
+		}
+		long nanos = System.nanoTime() - start;
+		ACQUISITIONS.increment();
+		WAIT_NANOS.add( nanos );
+		MAX_WAIT_NANOS.accumulate( nanos );
+		try {
+			return (Connection) proxy( Connection.class, new ConnectionHandler( super.getConnection() ) );
+		}
+		catch (RuntimeException | SQLException e) {
+			available.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void closeConnection(Connection connection) throws SQLException {
+		try {
+			// Give the pool back the connection it created.
+			super.closeConnection( ( (ConnectionHandler) Proxy.getInvocationHandler( connection ) ).connection );
+		}
+		finally {
+			available.release();
+		}
+	}
+
+	/**
+	 * Forgets the connection acquisitions counted so far, by all instances.
+	 */
+	public static void clearAcquisitions() {
+		ACQUISITIONS.reset();
+		WAIT_NANOS.reset();
+		MAX_WAIT_NANOS.reset();
+	}
+
+	/**
+	 * @return The number of connections acquired since the last {@link #clearAcquisitions()}, by all instances.
+	 */
+	public static long getAcquisitionCount() {
+		return ACQUISITIONS.sum();
+	}
+
+	/**
+	 * @return The time spent waiting for a connection since the last {@link #clearAcquisitions()}, in nanoseconds,
+	 * summed over all callers.
+	 */
+	public static long getWaitNanos() {
+		return WAIT_NANOS.sum();
+	}
+
+	/**
+	 * @return The longest wait for a connection since the last {@link #clearAcquisitions()}, in nanoseconds.
+	 */
+	public static long getMaxWaitNanos() {
+		return MAX_WAIT_NANOS.get();
+	}
+
+	private static Object proxy(Class<?> type, InvocationHandler handler) {
+		return Proxy.newProxyInstance( RecordingConnectionProvider.class.getClassLoader(), new Class<?>[] { type }, handler );
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke( target, args );
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static final class ConnectionHandler implements InvocationHandler {
+
+		private final Connection connection;
+
+		private ConnectionHandler(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result = RecordingConnectionProvider.invoke( connection, method, args );
+			if ( result instanceof Statement ) {
+				// prepareStatement(String sql, ...) and prepareCall(String sql, ...)
+				String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+				return proxy( method.getReturnType(), new StatementHandler( (Statement) result, sql ) );
+			}
+			return result;
+		}
+	}
+
+	private static final class StatementHandler implements InvocationHandler {
+
+		private final Statement statement;
+
+		private String sql;
+
+		private int bindCount;
+
+		private int batchSize;
+
+		private StatementHandler(Statement statement, String sql) {
+			this.statement = statement;
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ( name.startsWith( "execute" ) ) {
+				if ( args != null && args.length > 0 ) {
+					// Statement.execute(String sql, ...)
+					sql = (String) args[0];
+				}
+				long start = System.nanoTime();
+				Object result = RecordingConnectionProvider.invoke( statement, method, args );
+				long nanos = System.nanoTime() - start;
+				StatementRecorder.record( sql, bindCount, batchSize, nanos, rowsAffected( result ) );
+				bindCount = 0;
+				batchSize = 0;
+				return result;
+			}
+			else if ( name.equals( "addBatch" ) ) {
+				if ( args != null ) {
+					// Statement.addBatch(String sql)
+					sql = (String) args[0];
+				}
+				batchSize++;
+			}
+			else if ( name.equals( "clearBatch" ) ) {
+				bindCount = 0;
+				batchSize = 0;
+			}
+			else if ( name.startsWith( "set" ) && method.getDeclaringClass() != Statement.class ) {
+				// A parameter setter of PreparedStatement or CallableStatement, rather than setFetchSize() & co.
+				bindCount++;
+			}
+			return RecordingConnectionProvider.invoke( statement, method, args );
+		}
+
+		private static long rowsAffected(Object result) {
+			if ( result instanceof Number ) {
+				return ( (Number) result ).longValue();
+			}
+			long rows = -1;
+			if ( result instanceof int[] ) {
+				for ( int count : (int[]) result ) {
+					rows = count >= 0 ? Math.max( rows, 0 ) + count : rows;
+				}
+			}
+			else if ( result instanceof long[] ) {
+				for ( long count : (long[]) result ) {
+					rows = count >= 0 ? Math.max( rows, 0 ) + count : rows;
+				}
+			}
+			// Queries, and execute() which only tells whether there is a result set.
+			return rows;
+		}
+	}
+
+}
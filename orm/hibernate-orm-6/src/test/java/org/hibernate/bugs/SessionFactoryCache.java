@@ -0,0 +1,172 @@
+package org.hibernate.bugs;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Environment;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.SessionFactoryRegistry;
+
+/**
+ * Keeps SessionFactories (or EntityManagerFactories) open across test methods and test classes of the same JVM,
+ * so that identical configurations are only bootstrapped once.
+ * <p>
+ * Each cached factory gets its own H2 in-memory database, so that factories built from different entities
+ * never see each other's schema. Between tests, data is removed with {@link #truncate(EntityManagerFactory)}
+ * rather than by dropping and re-creating the schema. Factories are closed when the JVM shuts down.
+ */
+public final class SessionFactoryCache {
+
+	private static final String H2_MEM_URL_PREFIX = "jdbc:h2:mem:";
+
+	private static final Map<Object, EntityManagerFactory> FACTORIES = new ConcurrentHashMap<>();
+
+	private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+
+	static {
+		Runtime.getRuntime().addShutdownHook( new Thread( SessionFactoryCache::closeAll, "SessionFactoryCache shutdown" ) );
+	}
+
+	private SessionFactoryCache() {
+	}
+
+	/**
+	 * Returns the factory cached for {@code key}, building it if necessary.
+	 * The database URL defaults to the one in resources/hibernate.properties.
+	 *
+	 * @param key Everything that makes the configuration unique: entities, mappings, settings...
+	 * @param factoryBuilder Builds the factory, given the JDBC URL of the database dedicated to it.
+	 */
+	public static <T extends EntityManagerFactory> T getOrBuild(Object key, Function<String, T> factoryBuilder) {
+		return getOrBuild( key, Environment.getProperties().getProperty( AvailableSettings.JAKARTA_JDBC_URL ), factoryBuilder );
+	}
+
+	/**
+	 * Returns the factory cached for {@code key}, building it if necessary.
+	 *
+	 * @param key Everything that makes the configuration unique: entities, mappings, settings...
+	 * @param baseUrl The JDBC URL the test is configured with.
+	 * @param factoryBuilder Builds the factory, given the JDBC URL of the database dedicated to it.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends EntityManagerFactory> T getOrBuild(Object key, String baseUrl, Function<String, T> factoryBuilder) {
+		return (T) FACTORIES.computeIfAbsent( key, k -> {
+			T factory = factoryBuilder.apply( dedicatedUrl( baseUrl ) );
+			// The hibernate-testing runner closes all registered SessionFactories after each test class:
+			// the cache is in charge of closing this one instead.
+			SessionFactoryImplementor sessionFactory = factory.unwrap( SessionFactoryImplementor.class );
+			SessionFactoryRegistry.INSTANCE.removeSessionFactory( sessionFactory.getUuid(), null, false, null );
+			return factory;
+		} );
+	}
+
+	/**
+	 * Closes the factory cached for {@code key}, if any, so that the next lookup builds a fresh one.
+	 */
+	public static void evict(Object key) {
+		EntityManagerFactory factory = FACTORIES.remove( key );
+		if ( factory != null && factory.isOpen() ) {
+			factory.close();
+		}
+	}
+
+	/**
+	 * Builds a SessionFactory that is not cached, on a database dedicated to it, as the cached ones are.
+	 * Meant for parameterized tests that compare configurations, each used once: the caller closes the factory.
+	 *
+	 * @param settings The settings to apply on top of resources/hibernate.properties.
+	 * @param annotatedClasses The entities of the test.
+	 */
+	public static SessionFactory build(Map<String, Object> settings, Class<?>... annotatedClasses) {
+		return buildMetadata( settings, annotatedClasses ).buildSessionFactory();
+	}
+
+	/**
+	 * As {@link #build(Map, Class[])}, for tests that need to alter the mapping before building the SessionFactory.
+	 */
+	public static Metadata buildMetadata(Map<String, Object> settings, Class<?>... annotatedClasses) {
+		StandardServiceRegistryBuilder srb = new StandardServiceRegistryBuilder()
+				.applySettings( settings )
+				.applySetting( AvailableSettings.JAKARTA_JDBC_URL, dedicatedUrl( Environment.getProperties().getProperty( AvailableSettings.JAKARTA_JDBC_URL ) ) );
+		MetadataSources metadataSources = new MetadataSources( srb.build() );
+		for ( Class<?> annotatedClass : annotatedClasses ) {
+			metadataSources.addAnnotatedClass( annotatedClass );
+		}
+		return metadataSources.buildMetadata();
+	}
+
+	/**
+	 * Removes all rows from all tables and clears the second-level cache, leaving the schema in place for the next test.
+	 * <p>
+	 * Sequences are not restarted, since optimizers keep already allocated values in memory:
+	 * do not rely on generated identifier values across tests.
+	 */
+	public static void truncate(EntityManagerFactory factory) {
+		SessionFactoryImplementor sessionFactory = factory.unwrap( SessionFactoryImplementor.class );
+		if ( !( sessionFactory.getJdbcServices().getDialect() instanceof H2Dialect ) ) {
+			throw new UnsupportedOperationException( "Only H2 dialect supports schema reset by truncation." );
+		}
+		try ( Session session = sessionFactory.openSession() ) {
+			session.beginTransaction();
+			session.doWork( connection -> {
+				try ( Statement statement = connection.createStatement() ) {
+					List<String> tables = list( statement,
+							"select table_schema, table_name from information_schema.tables"
+									+ " where table_type = 'BASE TABLE' and table_schema <> 'INFORMATION_SCHEMA'" );
+					statement.execute( "set referential_integrity false" );
+					for ( String table : tables ) {
+						statement.execute( "truncate table " + table + " restart identity" );
+					}
+					statement.execute( "set referential_integrity true" );
+				}
+			} );
+			session.getTransaction().commit();
+		}
+		sessionFactory.getCache().evictAllRegions();
+	}
+
+	private static List<String> list(Statement statement, String query) throws SQLException {
+		List<String> names = new ArrayList<>();
+		try ( ResultSet resultSet = statement.executeQuery( query ) ) {
+			while ( resultSet.next() ) {
+				names.add( '"' + resultSet.getString( 1 ) + "\".\"" + resultSet.getString( 2 ) + '"' );
+			}
+		}
+		return names;
+	}
+
+	private static String dedicatedUrl(String baseUrl) {
+		if ( baseUrl == null || !baseUrl.startsWith( H2_MEM_URL_PREFIX ) ) {
+			// Not an in-memory H2 database: we cannot create another one on the fly.
+			return baseUrl;
+		}
+		int nameEnd = baseUrl.indexOf( ';' );
+		if ( nameEnd < 0 ) {
+			nameEnd = baseUrl.length();
+		}
+		return baseUrl.substring( 0, nameEnd ) + "_" + DATABASE_COUNTER.incrementAndGet() + baseUrl.substring( nameEnd );
+	}
+
+	private static void closeAll() {
+		for ( Object key : new ArrayList<>( FACTORIES.keySet() ) ) {
+			evict( key );
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.hibernate.bugs;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads, which this module cannot reference directly as it compiles for Java 11.
+ */
+public final class VirtualThreads {
+
+	private static final Method NEW_EXECUTOR = newExecutorMethod();
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return Whether the running JVM supports virtual threads, i.e. runs Java 21 or later.
+	 */
+	public static boolean isAvailable() {
+		return NEW_EXECUTOR != null;
+	}
+
+	/**
+	 * @return {@code Executors.newVirtualThreadPerTaskExecutor()}.
+	 * @throws UnsupportedOperationException If the running JVM does not support virtual threads.
+	 */
+	public static ExecutorService newExecutor() {
+		if ( NEW_EXECUTOR == null ) {
+			throw new UnsupportedOperationException( "Virtual threads require Java 21, running " + System.getProperty( "java.version" ) );
+		}
+		try {
+			return (ExecutorService) NEW_EXECUTOR.invoke( null );
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static Method newExecutorMethod() {
+		try {
+			return Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+}
@@ -13,6 +13,7 @@ import org.junit.Test;
 
 public class YourIT extends SearchTestBase {
 
+	// To reproduce an issue that depends on the size of the domain model, return classes from DomainModelGenerator instead.
 	@Override
 	public Class<?>[] getAnnotatedClasses() {
 		return new Class<?>[]{ YourAnnotatedEntity.class };
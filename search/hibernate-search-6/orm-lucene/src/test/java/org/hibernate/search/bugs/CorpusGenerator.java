@@ -0,0 +1,171 @@
+package org.hibernate.search.bugs;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates text for realistic search corpora and queries: term frequencies follow a Zipfian distribution,
+ * as in natural language, where a few terms appear in most documents and most terms are rare.
+ * <p>
+ * Terms are made of syllables, e.g. {@code "kari"}, and each has a rank: the term of rank 0 is the most frequent.
+ * Some terms are spelled with an accent, and some occurrences are capitalized,
+ * so that the lowercase and ASCII folding filters of {@code nameAnalyzer} have something to do.
+ * Texts are space separated: no punctuation, which the whitespace tokenizer would keep.
+ * <p>
+ * The same seed generates the same texts, e.g.:
+ * <pre>{@code
+ * CorpusGenerator corpus = CorpusGenerator.withSeed( 42 ).vocabularySize( 50_000 ).zipfExponent( 1.1 ).documentWords( 50, 2_000 );
+ * String body = corpus.nextDocument();
+ * String query = corpus.nextTerm();
+ * }</pre>
+ * Configure the generator before generating the first text.
+ */
+final class CorpusGenerator {
+
+	private static final String[] SYLLABLES = {
+			"ka", "ri", "to", "ne", "mu", "sa", "lo", "vi", "de", "po", "gu", "te", "bi", "fa", "zo", "che"
+	};
+
+	private final Random random;
+
+	private int vocabularySize = 10_000;
+
+	private double zipfExponent = 1.0;
+
+	private int minDocumentWords = 20;
+
+	private int maxDocumentWords = 500;
+
+	private double capitalizedShare = 0.05;
+
+	// The cumulative weight of the terms of rank 0 to i, computed for the first text.
+	private double[] cumulativeWeights;
+
+	static CorpusGenerator withSeed(long seed) {
+		return new CorpusGenerator( seed );
+	}
+
+	private CorpusGenerator(long seed) {
+		this.random = new Random( seed );
+	}
+
+	CorpusGenerator vocabularySize(int vocabularySize) {
+		this.vocabularySize = vocabularySize;
+		return this;
+	}
+
+	/**
+	 * @param zipfExponent How fast term frequencies decrease with their rank: the frequency of the term of rank
+	 * {@code r} is proportional to {@code 1 / (r + 1) ^ zipfExponent}. Around 1 for natural language.
+	 */
+	CorpusGenerator zipfExponent(double zipfExponent) {
+		this.zipfExponent = zipfExponent;
+		return this;
+	}
+
+	/**
+	 * @param min The number of words of the shortest documents.
+	 * @param max The number of words of the longest documents: most documents are much shorter.
+	 */
+	CorpusGenerator documentWords(int min, int max) {
+		this.minDocumentWords = min;
+		this.maxDocumentWords = max;
+		return this;
+	}
+
+	/**
+	 * @param capitalizedShare The share of the words of a text that are capitalized, from 0 to 1.
+	 */
+	CorpusGenerator capitalizedShare(double capitalizedShare) {
+		this.capitalizedShare = capitalizedShare;
+		return this;
+	}
+
+	int getVocabularySize() {
+		return vocabularySize;
+	}
+
+	/**
+	 * @return The term of the given rank, as indexed, i.e. lowercase, without accents.
+	 */
+	String term(int rank) {
+		return spell( rank, false );
+	}
+
+	/**
+	 * @return A term, drawn according to its frequency, as indexed.
+	 */
+	String nextTerm() {
+		return term( nextRank() );
+	}
+
+	/**
+	 * @return A term, drawn uniformly from the vocabulary, i.e. most likely a rare one, as indexed.
+	 */
+	String nextRareTerm() {
+		return term( random.nextInt( vocabularySize ) );
+	}
+
+	/**
+	 * @return A text of {@code words} words, drawn according to their frequency.
+	 */
+	String nextText(int words) {
+		StringBuilder sb = new StringBuilder();
+		for ( int i = 0; i < words; i++ ) {
+			String word = spell( nextRank(), true );
+			if ( i == 0 || random.nextDouble() < capitalizedShare ) {
+				word = Character.toUpperCase( word.charAt( 0 ) ) + word.substring( 1 );
+			}
+			sb.append( i == 0 ? "" : " " ).append( word );
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return A text of {@link #documentWords(int, int) between min and max} words, more often short than long.
+	 */
+	String nextDocument() {
+		double skew = random.nextDouble();
+		return nextText( minDocumentWords + (int) ( ( maxDocumentWords - minDocumentWords ) * skew * skew * skew ) );
+	}
+
+	/**
+	 * @return A random int in {@code [0, bound)}, from the generator's seed.
+	 */
+	int nextInt(int bound) {
+		return random.nextInt( bound );
+	}
+
+	private int nextRank() {
+		if ( cumulativeWeights == null ) {
+			cumulativeWeights = new double[vocabularySize];
+			double total = 0;
+			for ( int rank = 0; rank < vocabularySize; rank++ ) {
+				total += 1 / Math.pow( rank + 1, zipfExponent );
+				cumulativeWeights[rank] = total;
+			}
+		}
+		double target = random.nextDouble() * cumulativeWeights[vocabularySize - 1];
+		int index = Arrays.binarySearch( cumulativeWeights, target );
+		return index >= 0 ? index : Math.min( -index - 1, vocabularySize - 1 );
+	}
+
+	/**
+	 * Spells the rank in base {@code SYLLABLES.length}, with at least two syllables.
+	 */
+	private static String spell(int rank, boolean accents) {
+		StringBuilder sb = new StringBuilder();
+		for ( int remaining = rank + SYLLABLES.length; remaining > 0; remaining /= SYLLABLES.length ) {
+			sb.append( SYLLABLES[remaining % SYLLABLES.length] );
+		}
+		// One term in ten is spelled with an accent.
+		if ( accents && rank % 10 == 3 ) {
+			int e = sb.indexOf( "e" );
+			if ( e >= 0 ) {
+				sb.setCharAt( e, '\u00e9' );
+			}
+		}
+		return sb.toString();
+	}
+
+}
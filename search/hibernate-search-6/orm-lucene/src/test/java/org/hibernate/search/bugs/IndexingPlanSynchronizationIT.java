@@ -0,0 +1,283 @@
+package org.hibernate.search.bugs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.cfg.HibernateOrmMapperSettings;
+import org.hibernate.search.mapper.orm.work.SearchWorkspace;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.KeywordField;
+import org.hibernate.search.mapper.pojo.work.IndexingPlanSynchronizationStrategy;
+
+import org.jboss.logging.Logger;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+/**
+ * This template demonstrates how to measure, or report, the tradeoff between the indexing plan synchronization
+ * strategies: several threads persist indexed entities concurrently, with {@code async}, {@code write-sync},
+ * {@code read-sync} then {@code sync}, and, when the {@code outbox-polling} Maven profile is enabled,
+ * with outbox-polling coordination.
+ * <p>
+ * For each, it reports the median and 99th percentile transaction commit latency, the transactions committed
+ * per second, the indexing lag, i.e. how long after the commit returned a concurrent search first found the entity
+ * (see {@link IndexingLagProbe}), and how long indexing took to catch up with the writers once they were done.
+ * Each run starts from an empty table and index.
+ * <p>
+ * Tune it with the {@code indexing.writers}, {@code indexing.transactions} (per writer),
+ * {@code indexing.entities.per.transaction} and {@code indexing.lag.sample.every} system properties.
+ * Without {@code -Dbenchmarks=full}, each writer only commits 20 transactions, as a smoke test.
+ * The outbox-polling event processor polls every 100 ms by default:
+ * see {@code -Dhibernate.search.coordination.event_processor.polling_interval}.
+ */
+public class IndexingPlanSynchronizationIT extends SearchTestBase {
+
+	private static final Logger log = Logger.getLogger( IndexingPlanSynchronizationIT.class );
+
+	private static final int WRITERS = Integer.getInteger( "indexing.writers", 4 );
+
+	private static final int TRANSACTIONS = benchmarkSize( "indexing.transactions", 250, 20 );
+
+	private static final int ENTITIES_PER_TRANSACTION = Integer.getInteger( "indexing.entities.per.transaction", 1 );
+
+	// Measuring the lag of every transaction would slow down the writers it measures.
+	private static final int LAG_SAMPLE_EVERY = Integer.getInteger( "indexing.lag.sample.every", 10 );
+
+	private static final long CATCH_UP_TIMEOUT_MS = TimeUnit.MINUTES.toMillis( 2 );
+
+	private static final String OUTBOX_POLLING_SETTINGS = "org.hibernate.search.mapper.orm.coordination.outboxpolling.cfg.HibernateOrmMapperOutboxPollingSettings";
+
+	private static final Map<String, IndexingPlanSynchronizationStrategy> STRATEGIES = new LinkedHashMap<>();
+
+	static {
+		STRATEGIES.put( "async", IndexingPlanSynchronizationStrategy.async() );
+		STRATEGIES.put( "write-sync", IndexingPlanSynchronizationStrategy.writeSync() );
+		STRATEGIES.put( "read-sync", IndexingPlanSynchronizationStrategy.readSync() );
+		STRATEGIES.put( "sync", IndexingPlanSynchronizationStrategy.sync() );
+	}
+
+	@Override
+	public Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Ticket.class };
+	}
+
+	@Override
+	protected void configure(StandardServiceRegistryBuilder registryBuilder) {
+		// One connection per writer, plus the lag probe and the outbox-polling agents.
+		registryBuilder.applySetting( AvailableSettings.POOL_SIZE, String.valueOf( WRITERS + 4 ) );
+	}
+
+	@Test
+	public void synchronizationStrategies() throws Exception {
+		// Let the JIT compile the write and indexing paths of each strategy before measuring.
+		for ( Map.Entry<String, IndexingPlanSynchronizationStrategy> strategy : STRATEGIES.entrySet() ) {
+			run( "warm-up " + strategy.getKey(), strategy.getValue(), TRANSACTIONS / 5 );
+		}
+
+		Map<String, String> summary = new LinkedHashMap<>();
+		for ( Map.Entry<String, IndexingPlanSynchronizationStrategy> strategy : STRATEGIES.entrySet() ) {
+			summary.put( strategy.getKey(), run( strategy.getKey(), strategy.getValue(), TRANSACTIONS ) );
+		}
+
+		if ( isOnClasspath( OUTBOX_POLLING_SETTINGS ) ) {
+			// Coordination can't be changed at runtime: build a SessionFactory, and a schema with the outbox tables.
+			rebuildSessionFactory( registryBuilder -> {
+				registryBuilder.applySetting( HibernateOrmMapperSettings.COORDINATION_STRATEGY, "outbox-polling" );
+				// Transactions only write events to the outbox table: there is no synchronization strategy to choose.
+				registryBuilder.getSettings().remove( HibernateOrmMapperSettings.INDEXING_PLAN_SYNCHRONIZATION_STRATEGY );
+			} );
+			run( "warm-up", null, TRANSACTIONS / 5 );
+			summary.put( "outbox-polling", run( "outbox-polling", null, TRANSACTIONS ) );
+		}
+		else {
+			summary.put( "outbox-polling", String.format( "%10s", "skipped: run with -Poutbox-polling" ) );
+		}
+
+		StringBuilder sb = new StringBuilder( String.format( "%d writers, %d transactions each, persisting %d entities per transaction:%n",
+				WRITERS, TRANSACTIONS, ENTITIES_PER_TRANSACTION ) );
+		sb.append( String.format( "%-16s %10s %10s %8s %10s %10s %10s %10s %12s%n",
+				"strategy", "p50 ms", "p99 ms", "tx/s", "lag p50", "lag p99", "lag max", "search p50", "catch-up ms" ) );
+		summary.forEach( (strategy, results) -> sb.append( String.format( "%-16s %s%n", strategy, results ) ) );
+		log.info( sb );
+	}
+
+	/**
+	 * @param strategy The synchronization strategy of the writers' sessions, or {@code null} with outbox-polling.
+	 */
+	private String run(String label, IndexingPlanSynchronizationStrategy strategy, int transactions) throws Exception {
+		// Each run writes to an empty index, so that the strategies measured last do not pay for a bigger one.
+		clear();
+		ExecutorService executor = Executors.newFixedThreadPool( WRITERS + 1 );
+		try {
+			IndexingLagProbe probe = new IndexingLagProbe( getSessionFactory(), Ticket.class );
+			Future<?> probeFuture = executor.submit( probe );
+			CountDownLatch start = new CountDownLatch( 1 );
+			List<Future<long[]>> writers = new ArrayList<>();
+			for ( int i = 0; i < WRITERS; i++ ) {
+				int writer = i;
+				writers.add( executor.submit( () -> {
+					start.await();
+					return write( label, writer, strategy, transactions, probe );
+				} ) );
+			}
+
+			long startNanos = System.nanoTime();
+			start.countDown();
+			long[] commitNanos = new long[0];
+			for ( Future<long[]> writer : writers ) {
+				long[] writerCommitNanos = writer.get();
+				int offset = commitNanos.length;
+				commitNanos = Arrays.copyOf( commitNanos, offset + writerCommitNanos.length );
+				System.arraycopy( writerCommitNanos, 0, commitNanos, offset, writerCommitNanos.length );
+			}
+			long writeNanos = System.nanoTime() - startNanos;
+
+			long expected = (long) WRITERS * transactions * ENTITIES_PER_TRANSACTION;
+			long catchUpNanos = awaitIndexed( label, expected );
+			probe.stop();
+			probeFuture.get();
+
+			Arrays.sort( commitNanos );
+			List<Long> lagNanos = probe.getLagNanos();
+			List<Long> searchNanos = probe.getSearchNanos();
+			double transactionsPerSecond = commitNanos.length / ( writeNanos / (double) TimeUnit.SECONDS.toNanos( 1 ) );
+			log.infof( "%s: commit p50 %.2f ms, p99 %.2f ms, %.0f transactions/s, lag p50 %.2f ms, p99 %.2f ms, max %.2f ms,"
+							+ " search p50 %.2f ms, catch-up %d ms",
+					label, millis( commitNanos, 0.5 ), millis( commitNanos, 0.99 ), transactionsPerSecond,
+					millis( lagNanos, 0.5 ), millis( lagNanos, 0.99 ), millis( lagNanos, 1 ), millis( searchNanos, 0.5 ),
+					TimeUnit.NANOSECONDS.toMillis( catchUpNanos ) );
+			return String.format( "%10.2f %10.2f %8.0f %10.2f %10.2f %10.2f %10.2f %12d",
+					millis( commitNanos, 0.5 ), millis( commitNanos, 0.99 ), transactionsPerSecond,
+					millis( lagNanos, 0.5 ), millis( lagNanos, 0.99 ), millis( lagNanos, 1 ), millis( searchNanos, 0.5 ),
+					TimeUnit.NANOSECONDS.toMillis( catchUpNanos ) );
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The time taken by the commit of each transaction.
+	 */
+	private long[] write(String label, int writer, IndexingPlanSynchronizationStrategy strategy, int transactions, IndexingLagProbe probe) {
+		long[] commitNanos = new long[transactions];
+		for ( int i = 0; i < transactions; i++ ) {
+			try ( Session session = getSessionFactory().openSession() ) {
+				if ( strategy != null ) {
+					Search.session( session ).indexingPlanSynchronizationStrategy( strategy );
+				}
+				Transaction transaction = session.beginTransaction();
+				Ticket ticket = null;
+				for ( int j = 0; j < ENTITIES_PER_TRANSACTION; j++ ) {
+					ticket = new Ticket( label, "ticket " + j + " of transaction " + i + " by writer " + writer );
+					session.persist( ticket );
+				}
+				long start = System.nanoTime();
+				transaction.commit();
+				long end = System.nanoTime();
+				commitNanos[i] = end - start;
+				if ( i % LAG_SAMPLE_EVERY == 0 ) {
+					probe.track( ticket.id, end );
+				}
+			}
+		}
+		return commitNanos;
+	}
+
+	private void clear() {
+		try ( Session session = getSessionFactory().openSession() ) {
+			Transaction transaction = session.beginTransaction();
+			session.createQuery( "delete from Ticket" ).executeUpdate();
+			transaction.commit();
+		}
+		SearchWorkspace workspace = Search.mapping( getSessionFactory() ).scope( Ticket.class ).workspace();
+		workspace.purge();
+		workspace.refresh();
+	}
+
+	/**
+	 * @return How long after the writers were done all the entities of the run were found by a search.
+	 */
+	private long awaitIndexed(String label, long expected) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos( CATCH_UP_TIMEOUT_MS );
+		try ( Session session = getSessionFactory().openSession() ) {
+			while ( true ) {
+				long indexed = Search.session( session ).search( Ticket.class )
+						.where( f -> f.match().field( "run" ).matching( label ) )
+						.fetchTotalHitCount();
+				if ( indexed == expected ) {
+					return System.nanoTime() - start;
+				}
+				assertThat( System.nanoTime() ).as( "%d of %d entities indexed", indexed, expected ).isLessThan( deadline );
+				Thread.sleep( 1 );
+			}
+		}
+	}
+
+	private static double millis(long[] sortedNanos, double percentile) {
+		if ( sortedNanos.length == 0 ) {
+			return 0;
+		}
+		int index = Math.min( sortedNanos.length - 1, (int) Math.ceil( percentile * sortedNanos.length ) - 1 );
+		return sortedNanos[Math.max( 0, index )] / (double) TimeUnit.MILLISECONDS.toNanos( 1 );
+	}
+
+	private static double millis(List<Long> nanos, double percentile) {
+		return millis( nanos.stream().mapToLong( Long::longValue ).sorted().toArray(), percentile );
+	}
+
+	private static boolean isOnClasspath(String className) {
+		try {
+			Class.forName( className );
+			return true;
+		}
+		catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	@Entity(name = "Ticket")
+	@Indexed
+	public static class Ticket {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		// Tells the entities of each run apart.
+		@KeywordField
+		private String run;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		private String title;
+
+		public Ticket() {
+		}
+
+		public Ticket(String run, String title) {
+			this.run = run;
+			this.title = title;
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.hibernate.search.bugs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records Java Flight Recorder events with their stack trace, and hands them over once stopped.
+ * <p>
+ * JFR only records events that last longer than a threshold, 20 ms by default for most events:
+ * pass {@link Duration#ZERO} to see short but frequent events, at the cost of slowing the code under test down.
+ */
+public final class JfrEventRecorder implements AutoCloseable {
+
+	private final Recording recording = new Recording();
+
+	/**
+	 * Starts recording.
+	 *
+	 * @param threshold The shortest event to record.
+	 * @param events The names of the JFR events to record, e.g. {@code jdk.FileWrite}.
+	 */
+	public JfrEventRecorder(Duration threshold, String... events) {
+		for ( String event : events ) {
+			recording.enable( event ).withThreshold( threshold ).withStackTrace();
+		}
+		recording.start();
+	}
+
+	/**
+	 * Stops recording, then passes each recorded event to {@code consumer}, in no particular order.
+	 */
+	public void stop(Consumer<RecordedEvent> consumer) {
+		recording.stop();
+		try {
+			Path file = Files.createTempFile( "recording", ".jfr" );
+			try {
+				recording.dump( file );
+				for ( RecordedEvent event : RecordingFile.readAllEvents( file ) ) {
+					consumer.accept( event );
+				}
+			}
+			finally {
+				Files.deleteIfExists( file );
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	@Override
+	public void close() {
+		recording.close();
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.hibernate.search.bugs;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Runs an operation many times on the current thread, and reports the percentiles of its latency,
+ * and the bytes it allocated. Slow operations run fewer times: sampling stops once a time budget is spent,
+ * after one run at least.
+ * <p>
+ * Allocations are read from the {@code com.sun.management} extension of ThreadMXBean, on Java 14 or later:
+ * other JVMs report 0 bytes.
+ */
+final class LatencySampler {
+
+	private final int samples;
+
+	private final long budgetNanos;
+
+	/**
+	 * @param samples The number of runs, at most.
+	 * @param budgetMillis The time after which no more runs start.
+	 */
+	LatencySampler(int samples, long budgetMillis) {
+		this.samples = samples;
+		this.budgetNanos = TimeUnit.MILLISECONDS.toNanos( budgetMillis );
+	}
+
+	/**
+	 * Runs the operation a quarter of the sample count, without measuring it,
+	 * so that the JIT compiles the code under test before {@link #measure(IntToLongFunction)}.
+	 */
+	void warmUp(IntToLongFunction operation) {
+		sample( operation, Math.max( 1, samples / 4 ) );
+	}
+
+	/**
+	 * @param operation Given the index of the run, returns a count to sum over runs, e.g. of hits.
+	 */
+	Latencies measure(IntToLongFunction operation) {
+		return sample( operation, samples );
+	}
+
+	private Latencies sample(IntToLongFunction operation, int max) {
+		long[] nanos = new long[max];
+		long total = 0;
+		long allocatedAtStart = allocatedBytes();
+		long budgetEnd = System.nanoTime() + budgetNanos;
+		int count = 0;
+		while ( count < max && ( count == 0 || System.nanoTime() < budgetEnd ) ) {
+			long start = System.nanoTime();
+			total += operation.applyAsLong( count );
+			nanos[count++] = System.nanoTime() - start;
+		}
+		long allocated = allocatedBytes() - allocatedAtStart;
+		return new Latencies( Arrays.copyOf( nanos, count ), total, allocated );
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if ( threads instanceof com.sun.management.ThreadMXBean ) {
+			try {
+				return ( (com.sun.management.ThreadMXBean) threads ).getCurrentThreadAllocatedBytes();
+			}
+			catch (NoSuchMethodError | UnsupportedOperationException e) {
+				// Before Java 14, or allocation measurement disabled.
+			}
+		}
+		return 0;
+	}
+
+	static final class Latencies {
+
+		private final long[] sortedNanos;
+		private final long total;
+		private final long allocatedBytes;
+
+		private Latencies(long[] nanos, long total, long allocatedBytes) {
+			Arrays.sort( nanos );
+			this.sortedNanos = nanos;
+			this.total = total;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		int count() {
+			return sortedNanos.length;
+		}
+
+		double percentileMillis(double percentile) {
+			int index = Math.min( count() - 1, (int) Math.ceil( percentile * count() ) - 1 );
+			return sortedNanos[Math.max( 0, index )] / (double) TimeUnit.MILLISECONDS.toNanos( 1 );
+		}
+
+		/**
+		 * @return The mean of the counts the operation returned.
+		 */
+		long meanTotal() {
+			return total / count();
+		}
+
+		/**
+		 * @return The bytes allocated by a run, on average, including what the sampler allocates itself.
+		 */
+		long allocatedBytesPerSample() {
+			return allocatedBytes / count();
+		}
+	}
+
+}
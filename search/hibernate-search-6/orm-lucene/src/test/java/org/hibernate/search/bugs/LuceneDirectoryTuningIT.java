@@ -0,0 +1,389 @@
+package org.hibernate.search.bugs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.search.backend.lucene.cfg.LuceneIndexSettings;
+import org.hibernate.search.engine.cfg.BackendSettings;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.KeywordField;
+import org.hibernate.search.mapper.pojo.work.IndexingPlanSynchronizationStrategy;
+
+import org.jboss.logging.Logger;
+import org.junit.Test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+/**
+ * This template demonstrates how to measure, or report, the effect of the Lucene directory and I/O settings:
+ * for each tuning below, several threads persist indexed articles while others run full-text searches,
+ * in a SessionFactory built with the settings of the tuning on top of hibernate.properties.
+ * <p>
+ * For each tuning, it reports the documents indexed per second, until all of them were searchable,
+ * the indexing lag as seen by a concurrent search (see {@link IndexingLagProbe}), the median search latency
+ * and the searches per second, then the fsyncs, and the bytes written to the index files (see {@link FileIoRecorder}).
+ * Since recording file I/O slows down the writes it records, I/O is recorded in a second run of the same workload,
+ * on new indexes, not in the run that is timed.
+ * <p>
+ * The writers use the {@code async} synchronization strategy, so that {@code io.commit_interval}
+ * and {@code io.refresh_interval} apply: {@code write-sync} and {@code sync} commit after each transaction,
+ * {@code read-sync} and {@code sync} refresh after each. Change it with {@code -Dlucene.synchronization}.
+ * Tune the workload with the {@code lucene.writers}, {@code lucene.transactions} (per writer),
+ * {@code lucene.entities.per.transaction}, {@code lucene.readers} and {@code lucene.lag.sample.every} system properties,
+ * and add your own tunings to {@link #TUNINGS}.
+ * Without {@code -Dbenchmarks=full}, each writer only commits 10 transactions per tuning, as a smoke test.
+ */
+public class LuceneDirectoryTuningIT extends SearchTestBase {
+
+	private static final Logger log = Logger.getLogger( LuceneDirectoryTuningIT.class );
+
+	private static final int WRITERS = Integer.getInteger( "lucene.writers", 2 );
+
+	private static final int TRANSACTIONS = benchmarkSize( "lucene.transactions", 200, 10 );
+
+	private static final int ENTITIES_PER_TRANSACTION = Integer.getInteger( "lucene.entities.per.transaction", 10 );
+
+	private static final int READERS = Integer.getInteger( "lucene.readers", 2 );
+
+	private static final int LAG_SAMPLE_EVERY = Integer.getInteger( "lucene.lag.sample.every", 10 );
+
+	private static final String SYNCHRONIZATION = System.getProperty( "lucene.synchronization", "async" );
+
+	private static final long CATCH_UP_TIMEOUT_MS = TimeUnit.MINUTES.toMillis( 2 );
+
+	private static final int VOCABULARY = 2_000;
+
+	private static final int WORDS_PER_ARTICLE = 100;
+
+	/**
+	 * Each tuning changes one setting of the defaults: local-filesystem directory, auto filesystem access,
+	 * 1000 ms commit interval, 0 ms refresh interval, 16 MB writer RAM buffer.
+	 */
+	private static final List<Tuning> TUNINGS = Arrays.asList(
+			new Tuning( "defaults" ),
+			new Tuning( "simple" ).with( LuceneIndexSettings.DIRECTORY_FILESYSTEM_ACCESS_STRATEGY, "simple" ),
+			new Tuning( "nio" ).with( LuceneIndexSettings.DIRECTORY_FILESYSTEM_ACCESS_STRATEGY, "nio" ),
+			new Tuning( "mmap" ).with( LuceneIndexSettings.DIRECTORY_FILESYSTEM_ACCESS_STRATEGY, "mmap" ),
+			new Tuning( "local-heap" ).with( LuceneIndexSettings.DIRECTORY_TYPE, "local-heap" ),
+			new Tuning( "commit_interval 0" ).with( LuceneIndexSettings.IO_COMMIT_INTERVAL, "0" ),
+			new Tuning( "commit_interval 5000" ).with( LuceneIndexSettings.IO_COMMIT_INTERVAL, "5000" ),
+			new Tuning( "refresh_interval 100" ).with( LuceneIndexSettings.IO_REFRESH_INTERVAL, "100" ),
+			new Tuning( "refresh_interval 1000" ).with( LuceneIndexSettings.IO_REFRESH_INTERVAL, "1000" ),
+			new Tuning( "ram_buffer_size 4" ).with( LuceneIndexSettings.IO_WRITER_RAM_BUFFER_SIZE, "4" ),
+			new Tuning( "ram_buffer_size 64" ).with( LuceneIndexSettings.IO_WRITER_RAM_BUFFER_SIZE, "64" )
+	);
+
+	@Override
+	public Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Article.class };
+	}
+
+	@Override
+	protected void configure(StandardServiceRegistryBuilder registryBuilder) {
+		// One connection per writer, plus the readers and the lag probe, which only need one to open their session.
+		registryBuilder.applySetting( AvailableSettings.POOL_SIZE, String.valueOf( WRITERS + READERS + 2 ) );
+	}
+
+	@Test
+	public void directoryTunings() throws Exception {
+		// Let the JIT compile the write, indexing and search paths before measuring.
+		run( new Tuning( "warm-up" ), TRANSACTIONS );
+
+		Map<String, String> summary = new LinkedHashMap<>();
+		for ( Tuning tuning : TUNINGS ) {
+			// Backend settings can't be changed at runtime: build a SessionFactory, and indexes, for each tuning.
+			rebuildSessionFactory( tuning::apply );
+			Measurement measurement = run( tuning, TRANSACTIONS );
+
+			// Each recorded write costs more on a filesystem directory than on local-heap, which writes no file:
+			// recording the timed run would favor local-heap.
+			rebuildSessionFactory( tuning::apply );
+			FileIoRecorder.Report io;
+			try ( FileIoRecorder recorder = new FileIoRecorder( indexRoot() ) ) {
+				run( tuning, TRANSACTIONS );
+				io = recorder.stop();
+			}
+
+			log.infof( "%s: %s, in a second run %s", tuning, measurement.describe(), io );
+			summary.put( tuning.label, String.format( "%s %8d %10d %10.1f", measurement, io.getForceCount(),
+					TimeUnit.NANOSECONDS.toMillis( io.getForceNanos() ), io.getBytesWritten() / 1024.0 / 1024.0 ) );
+		}
+
+		StringBuilder sb = new StringBuilder( String.format( "%d writers, %d transactions each, persisting %d articles per transaction,"
+				+ " %s synchronization, %d readers:%n", WRITERS, TRANSACTIONS, ENTITIES_PER_TRANSACTION, SYNCHRONIZATION, READERS ) );
+		sb.append( String.format( "%-22s %8s %10s %10s %10s %10s %8s %10s %10s%n",
+				"tuning", "docs/s", "lag p50", "lag p99", "search p50", "searches/s", "fsyncs", "fsync ms", "MB written" ) );
+		summary.forEach( (tuning, results) -> sb.append( String.format( "%-22s %s%n", tuning, results ) ) );
+		log.info( sb );
+	}
+
+	private Measurement run(Tuning tuning, int transactions) throws Exception {
+		IndexingPlanSynchronizationStrategy strategy = synchronizationStrategy( SYNCHRONIZATION );
+		ExecutorService executor = Executors.newFixedThreadPool( WRITERS + READERS + 1 );
+		try {
+			IndexingLagProbe probe = new IndexingLagProbe( getSessionFactory(), Article.class );
+			Future<?> probeFuture = executor.submit( probe );
+			CountDownLatch start = new CountDownLatch( 1 );
+			CountDownLatch writersDone = new CountDownLatch( WRITERS );
+			List<Future<?>> writers = new ArrayList<>();
+			for ( int i = 0; i < WRITERS; i++ ) {
+				Random random = new Random( i );
+				writers.add( executor.submit( () -> {
+					start.await();
+					try {
+						write( tuning.label, strategy, transactions, random, probe );
+					}
+					finally {
+						writersDone.countDown();
+					}
+					return null;
+				} ) );
+			}
+			List<Future<List<Long>>> readers = new ArrayList<>();
+			for ( int i = 0; i < READERS; i++ ) {
+				Random random = new Random( -1 - i );
+				readers.add( executor.submit( () -> {
+					start.await();
+					return search( random, writersDone );
+				} ) );
+			}
+
+			long startNanos = System.nanoTime();
+			start.countDown();
+			for ( Future<?> writer : writers ) {
+				writer.get();
+			}
+			long writeNanos = System.nanoTime() - startNanos;
+			List<Long> searchNanos = new ArrayList<>();
+			for ( Future<List<Long>> reader : readers ) {
+				searchNanos.addAll( reader.get() );
+			}
+
+			long expected = (long) WRITERS * transactions * ENTITIES_PER_TRANSACTION;
+			long catchUpNanos = awaitIndexed( tuning.label, expected );
+			probe.stop();
+			probeFuture.get();
+
+			double seconds = ( writeNanos + catchUpNanos ) / (double) TimeUnit.SECONDS.toNanos( 1 );
+			double searchesPerSecond = searchNanos.size() / ( writeNanos / (double) TimeUnit.SECONDS.toNanos( 1 ) );
+			return new Measurement( expected / seconds, probe.getLagNanos(), searchNanos, searchesPerSecond );
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void write(String run, IndexingPlanSynchronizationStrategy strategy, int transactions, Random random, IndexingLagProbe probe) {
+		for ( int i = 0; i < transactions; i++ ) {
+			try ( Session session = getSessionFactory().openSession() ) {
+				Search.session( session ).indexingPlanSynchronizationStrategy( strategy );
+				Transaction transaction = session.beginTransaction();
+				Article article = null;
+				for ( int j = 0; j < ENTITIES_PER_TRANSACTION; j++ ) {
+					article = new Article( run, words( random, 5 ), words( random, WORDS_PER_ARTICLE ) );
+					session.persist( article );
+				}
+				transaction.commit();
+				if ( i % LAG_SAMPLE_EVERY == 0 ) {
+					probe.track( article.id, System.nanoTime() );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches for a random word until the writers are done.
+	 *
+	 * @return The duration of each search.
+	 */
+	private List<Long> search(Random random, CountDownLatch writersDone) throws InterruptedException {
+		List<Long> searchNanos = new ArrayList<>();
+		try ( Session session = getSessionFactory().openSession() ) {
+			while ( !writersDone.await( 0, TimeUnit.MILLISECONDS ) ) {
+				String word = word( random );
+				long start = System.nanoTime();
+				Search.session( session ).search( Article.class )
+						.select( f -> f.id() )
+						.where( f -> f.match().field( "body" ).matching( word ) )
+						.fetchHits( 10 );
+				searchNanos.add( System.nanoTime() - start );
+			}
+		}
+		return searchNanos;
+	}
+
+	/**
+	 * @return How long after the writers were done all the articles of the run were found by a search.
+	 */
+	private long awaitIndexed(String run, long expected) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos( CATCH_UP_TIMEOUT_MS );
+		try ( Session session = getSessionFactory().openSession() ) {
+			while ( true ) {
+				long indexed = Search.session( session ).search( Article.class )
+						.where( f -> f.match().field( "run" ).matching( run ) )
+						.fetchTotalHitCount();
+				if ( indexed == expected ) {
+					return System.nanoTime() - start;
+				}
+				assertThat( System.nanoTime() ).as( "%d of %d articles indexed", indexed, expected ).isLessThan( deadline );
+				Thread.sleep( 1 );
+			}
+		}
+	}
+
+	private Path indexRoot() {
+		return Paths.get( (String) getSessionFactory().getProperties()
+				.get( BackendSettings.backendKey( LuceneIndexSettings.DIRECTORY_ROOT ) ) );
+	}
+
+	private static IndexingPlanSynchronizationStrategy synchronizationStrategy(String name) {
+		switch ( name ) {
+			case "async":
+				return IndexingPlanSynchronizationStrategy.async();
+			case "write-sync":
+				return IndexingPlanSynchronizationStrategy.writeSync();
+			case "read-sync":
+				return IndexingPlanSynchronizationStrategy.readSync();
+			case "sync":
+				return IndexingPlanSynchronizationStrategy.sync();
+			default:
+				throw new IllegalArgumentException( "Unknown synchronization strategy: " + name );
+		}
+	}
+
+	private static String words(Random random, int count) {
+		StringBuilder sb = new StringBuilder();
+		for ( int i = 0; i < count; i++ ) {
+			sb.append( i == 0 ? "" : " " ).append( word( random ) );
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return A word of the vocabulary, the first ones much more often, as in natural language.
+	 */
+	private static String word(Random random) {
+		return "word" + (int) Math.pow( VOCABULARY, random.nextDouble() );
+	}
+
+	private static double millis(List<Long> nanos, double percentile) {
+		long[] sorted = nanos.stream().mapToLong( Long::longValue ).sorted().toArray();
+		if ( sorted.length == 0 ) {
+			return 0;
+		}
+		int index = Math.min( sorted.length - 1, (int) Math.ceil( percentile * sorted.length ) - 1 );
+		return sorted[Math.max( 0, index )] / (double) TimeUnit.MILLISECONDS.toNanos( 1 );
+	}
+
+	private static final class Measurement {
+
+		private final double documentsPerSecond;
+		private final double lagP50Millis;
+		private final double lagP99Millis;
+		private final double searchP50Millis;
+		private final double searchesPerSecond;
+
+		private Measurement(double documentsPerSecond, List<Long> lagNanos, List<Long> searchNanos, double searchesPerSecond) {
+			this.documentsPerSecond = documentsPerSecond;
+			this.lagP50Millis = millis( lagNanos, 0.5 );
+			this.lagP99Millis = millis( lagNanos, 0.99 );
+			this.searchP50Millis = millis( searchNanos, 0.5 );
+			this.searchesPerSecond = searchesPerSecond;
+		}
+
+		private String describe() {
+			return String.format( "%.0f documents/s, lag p50 %.2f ms, p99 %.2f ms, search p50 %.2f ms, %.0f searches/s",
+					documentsPerSecond, lagP50Millis, lagP99Millis, searchP50Millis, searchesPerSecond );
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%8.0f %10.2f %10.2f %10.2f %10.0f",
+					documentsPerSecond, lagP50Millis, lagP99Millis, searchP50Millis, searchesPerSecond );
+		}
+	}
+
+	/**
+	 * Backend settings, applied on top of hibernate.properties.
+	 */
+	private static final class Tuning {
+
+		private final String label;
+
+		private final Map<String, String> settings = new LinkedHashMap<>();
+
+		private Tuning(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * @param key A key of {@link LuceneIndexSettings}, applied to all indexes of the default backend.
+		 */
+		private Tuning with(String key, String value) {
+			settings.put( BackendSettings.backendKey( key ), value );
+			return this;
+		}
+
+		private void apply(StandardServiceRegistryBuilder registryBuilder) {
+			settings.forEach( registryBuilder::applySetting );
+		}
+
+		@Override
+		public String toString() {
+			return settings.isEmpty() ? label : label + " " + settings;
+		}
+	}
+
+	@Entity(name = "Article")
+	@Indexed
+	public static class Article {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		// Tells the articles of each run apart.
+		@KeywordField
+		private String run;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		private String title;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		@Column(length = 2_000)
+		private String body;
+
+		public Article() {
+		}
+
+		public Article(String run, String title, String body) {
+			this.run = run;
+			this.title = title;
+			this.body = body;
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.hibernate.search.bugs;
 
+import java.util.function.Consumer;
+
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
@@ -11,11 +13,46 @@ import org.junit.Before;
 
 public abstract class SearchTestBase {
 
+	/**
+	 * Benchmark ITs, such as MassIndexerIT, run at full size with {@code mvn verify -Dbenchmarks=full}.
+	 * By default, they run a smoke test: a workload small enough to check they still work in a plain build.
+	 */
+	protected static final boolean FULL_BENCHMARKS = "full".equals( System.getProperty( "benchmarks" ) );
+
 	private SessionFactory sessionFactory;
 
 	@Before
 	public void setUp() {
+		this.sessionFactory = buildSessionFactory( registryBuilder -> { } );
+	}
+
+	@After
+	public void tearDown() {
+		if ( this.sessionFactory != null ) {
+			this.sessionFactory.close();
+		}
+	}
+
+	/**
+	 * Closes the SessionFactory, and builds a new one, with the settings of {@code registryAdapter} applied last.
+	 * For tests comparing configurations that can't be changed at runtime.
+	 */
+	protected void rebuildSessionFactory(Consumer<StandardServiceRegistryBuilder> registryAdapter) {
+		tearDown();
+		this.sessionFactory = null;
+		this.sessionFactory = buildSessionFactory( registryAdapter );
+	}
+
+	/**
+	 * Override to apply settings on top of hibernate.properties.
+	 */
+	protected void configure(StandardServiceRegistryBuilder registryBuilder) {
+	}
+
+	private SessionFactory buildSessionFactory(Consumer<StandardServiceRegistryBuilder> registryAdapter) {
 		StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder();
+		configure( registryBuilder );
+		registryAdapter.accept( registryBuilder );
 		MetadataSources ms = new MetadataSources( registryBuilder.build() );
 		Class<?>[] annotatedClasses = getAnnotatedClasses();
 		if ( annotatedClasses != null ) {
@@ -27,14 +64,15 @@ public abstract class SearchTestBase {
 		Metadata metadata = ms.buildMetadata();
 
 		final SessionFactoryBuilder sfb = metadata.getSessionFactoryBuilder();
-		this.sessionFactory = sfb.build();
+		return sfb.build();
 	}
 
-	@After
-	public void tearDown() {
-		if ( this.sessionFactory != null ) {
-			this.sessionFactory.close();
-		}
+	/**
+	 * @return The value of the system property {@code property}, if set,
+	 * otherwise {@code full} or {@code smoke} depending on {@link #FULL_BENCHMARKS}.
+	 */
+	protected static int benchmarkSize(String property, int full, int smoke) {
+		return Integer.getInteger( property, FULL_BENCHMARKS ? full : smoke );
 	}
 
 	protected abstract Class<?>[] getAnnotatedClasses();
@@ -0,0 +1,109 @@
+package org.hibernate.search.bugs;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+
+/**
+ * Records, through Java Flight Recorder, the file writes and the fsyncs ({@code FileChannel.force}) under a directory,
+ * e.g. the Lucene indexes: an fsync is what makes a Lucene commit durable, and what IO-bound deployments wait on.
+ * Writes to memory-mapped files are not file writes: they are left out.
+ * Some events have no path: those are attributed to the directory if Lucene issued them.
+ * <p>
+ * Typical usage: create a recorder, run the code under test, then log {@link #stop()}.
+ * Every write is recorded with its stack trace, which slows down the code writing files, but not the code writing
+ * to memory: time the code under test in a run without recorder.
+ */
+public final class FileIoRecorder implements AutoCloseable {
+
+	private static final String FORCE = "jdk.FileForce";
+
+	private static final String WRITE = "jdk.FileWrite";
+
+	private static final String LUCENE_PACKAGE = "org.apache.lucene.";
+
+	private final Path directory;
+
+	private final JfrEventRecorder recorder = new JfrEventRecorder( Duration.ZERO, FORCE, WRITE );
+
+	public FileIoRecorder(Path directory) {
+		this.directory = directory.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Stops recording.
+	 */
+	public Report stop() {
+		Report report = new Report();
+		recorder.stop( event -> {
+			if ( !isInDirectory( event ) ) {
+				return;
+			}
+			if ( FORCE.equals( event.getEventType().getName() ) ) {
+				report.forces++;
+				report.forceNanos += event.getDuration().toNanos();
+			}
+			else {
+				report.bytesWritten += Math.max( 0, event.getLong( "bytesWritten" ) );
+			}
+		} );
+		return report;
+	}
+
+	@Override
+	public void close() {
+		recorder.close();
+	}
+
+	private boolean isInDirectory(RecordedEvent event) {
+		String path = event.getString( "path" );
+		if ( path != null ) {
+			// Compares whole names: the index root "indexes_1" does not contain "indexes_10/...".
+			return Paths.get( path ).toAbsolutePath().normalize().startsWith( directory );
+		}
+		// The JDK does not know the path of every channel, e.g. of those Lucene opens to fsync a directory.
+		if ( event.getStackTrace() == null ) {
+			return false;
+		}
+		for ( RecordedFrame frame : event.getStackTrace().getFrames() ) {
+			if ( frame.getMethod().getType().getName().startsWith( LUCENE_PACKAGE ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static final class Report {
+
+		private long forces;
+		private long forceNanos;
+		private long bytesWritten;
+
+		private Report() {
+		}
+
+		/**
+		 * @return The number of fsyncs of files, and of directories.
+		 */
+		public long getForceCount() {
+			return forces;
+		}
+
+		public long getForceNanos() {
+			return forceNanos;
+		}
+
+		public long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%d fsyncs taking %d ms, %d KB written", forces, forceNanos / 1_000_000, bytesWritten / 1024 );
+		}
+	}
+
+}
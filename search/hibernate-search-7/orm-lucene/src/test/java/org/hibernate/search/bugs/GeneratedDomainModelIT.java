@@ -0,0 +1,110 @@
+package org.hibernate.search.bugs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This template demonstrates how to reproduce an issue with a generated, indexed domain model:
+ * classes from {@link DomainModelGenerator#load()} go through {@link #getAnnotatedClasses()}, as in YourIT,
+ * and are used through reflection, since they have no accessors.
+ */
+public class GeneratedDomainModelIT extends SearchTestBase {
+
+	// Three hierarchies of three entities, e.g. Entity3 extends Entity2 extends Entity1,
+	// each entity referencing the two generated before it.
+	private static final Class<?>[] ENTITIES = new DomainModelGenerator( "org.hibernate.search.bugs.generated.template" )
+			.entities( 9 ).fieldsPerEntity( 4 ).associationFanOut( 2 ).inheritanceDepth( 2 ).load();
+
+	@Override
+	public Class<?>[] getAnnotatedClasses() {
+		return ENTITIES;
+	}
+
+	@Test
+	public void generatedDomainModel() {
+		try ( Session s = getSessionFactory().openSession() ) {
+			Object entity1 = newEntity( ENTITIES[0], 1L );
+			Object entity2 = newEntity( ENTITIES[1], 2L );
+			set( entity2, "entity2Association1", entity1 );
+			Object entity3 = newEntity( ENTITIES[2], 3L );
+			set( entity3, "entity3Association1", entity2 );
+			set( entity3, "entity3Association2", entity1 );
+			set( entity3, "entity3Field4", "Jane Smith" );
+
+			Transaction tx = s.beginTransaction();
+			s.persist( entity1 );
+			s.persist( entity2 );
+			s.persist( entity3 );
+			tx.commit();
+		}
+
+		try ( Session session = getSessionFactory().openSession() ) {
+			SearchSession searchSession = Search.session( session );
+
+			// Searches on the root of a hierarchy return its subclasses too.
+			assertThat( searchSession.search( ENTITIES[0] ).where( f -> f.matchAll() ).fetchTotalHitCount() )
+					.isEqualTo( 3L );
+
+			List<?> hits = searchSession.search( ENTITIES[0] )
+					.where( f -> f.match().field( "entity3Field4" ).matching( "smith" ) )
+					.fetchHits( 20 );
+			assertThat( hits ).hasSize( 1 );
+			assertThat( hits.get( 0 ) ).isInstanceOf( ENTITIES[2] );
+			assertThat( get( hits.get( 0 ), "id" ) ).isEqualTo( 3L );
+		}
+	}
+
+	private static Object newEntity(Class<?> type, Long id) {
+		try {
+			Object entity = type.getDeclaredConstructor().newInstance();
+			set( entity, "id", id );
+			return entity;
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static void set(Object entity, String fieldName, Object value) {
+		try {
+			field( entity.getClass(), fieldName ).set( entity, value );
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static Object get(Object entity, String fieldName) {
+		try {
+			return field( entity.getClass(), fieldName ).get( entity );
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	// Fields are declared by the generated class that introduces them, e.g. the id by the root of the hierarchy.
+	private static Field field(Class<?> type, String fieldName) {
+		for ( Class<?> declaring = type; declaring != null; declaring = declaring.getSuperclass() ) {
+			try {
+				Field field = declaring.getDeclaredField( fieldName );
+				field.setAccessible( true );
+				return field;
+			}
+			catch (NoSuchFieldException e) {
+				// Look in the superclass.
+			}
+		}
+		throw new IllegalArgumentException( "No field " + fieldName + " in " + type );
+	}
+
+}
@@ -0,0 +1,305 @@
+package org.hibernate.search.bugs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.IntToLongFunction;
+
+import org.hibernate.Session;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.search.engine.backend.types.Projectable;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.cfg.HibernateOrmMapperSettings;
+import org.hibernate.search.mapper.orm.mapping.HibernateOrmMappingConfigurationContext;
+import org.hibernate.search.mapper.orm.mapping.HibernateOrmSearchMappingConfigurer;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FieldProjection;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.GenericField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.KeywordField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.ProjectionConstructor;
+import org.hibernate.stat.Statistics;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.ManyToOne;
+
+/**
+ * This template demonstrates how to measure, or report, what loading entities from the database costs a search,
+ * compared to projecting on the fields stored in the index: it runs the same queries, fetching the same page of hits,
+ * as managed entities, as projections on three fields (as a list, then through a composite projection,
+ * then through a {@link ProjectionConstructor projection constructor}), and as identifiers.
+ * For each, it reports the p50 and p99 latency, the bytes allocated and the SQL statements executed per page.
+ * <p>
+ * Each page is fetched in an empty persistence context, as in the new session of a search endpoint,
+ * so that entities are loaded from the database every time. Products reference a supplier, loaded eagerly as mappings often do, which costs entity loading
+ * more statements.
+ * <p>
+ * Tune it with the {@code loading.products}, {@code loading.suppliers}, {@code loading.page.size},
+ * {@code loading.samples}, {@code loading.sample.budget.ms} and {@code loading.seed} system properties.
+ * Without {@code -Dbenchmarks=full}, it only indexes 1000 products, and loads 20 pages per scenario, as a smoke test.
+ */
+@Isolated
+@Execution(ExecutionMode.SAME_THREAD)
+public class HitLoadingIT extends SearchTestBase {
+
+	private static final Logger log = Logger.getLogger( HitLoadingIT.class );
+
+	private static final int PRODUCTS = benchmarkSize( "loading.products", 10_000, 1_000 );
+
+	private static final int SUPPLIERS = Integer.getInteger( "loading.suppliers", 200 );
+
+	private static final int PAGE_SIZE = Integer.getInteger( "loading.page.size", 20 );
+
+	private static final int SAMPLES = benchmarkSize( "loading.samples", 200, 20 );
+
+	private static final long SAMPLE_BUDGET_MS = Long.getLong( "loading.sample.budget.ms", 5_000 );
+
+	private static final long SEED = Long.getLong( "loading.seed", 42 );
+
+	private static final int BATCH_SIZE = 1_000;
+
+	private static final String[] BRANDS = {
+			"acme", "globex", "initech", "umbrella", "hooli", "stark", "wayne", "tyrell", "wonka", "soylent"
+	};
+
+	@Override
+	public Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Product.class, Supplier.class };
+	}
+
+	@Override
+	protected void configure(StandardServiceRegistryBuilder registryBuilder) {
+		registryBuilder.applySetting( AvailableSettings.GENERATE_STATISTICS, "true" );
+		registryBuilder.applySetting( AvailableSettings.STATEMENT_BATCH_SIZE, "50" );
+		registryBuilder.applySetting( HibernateOrmMapperSettings.MAPPING_CONFIGURER, ProjectionMappingConfigurer.class.getName() );
+	}
+
+	@Test
+	public void hitLoading() {
+		CorpusGenerator corpus = CorpusGenerator.withSeed( SEED ).vocabularySize( 2_000 ).documentWords( 50, 1_000 );
+		populate( corpus );
+		// The same terms for each scenario: only the way hits are fetched differs.
+		String[] terms = new String[SAMPLES];
+		for ( int i = 0; i < terms.length; i++ ) {
+			terms[i] = corpus.nextTerm();
+		}
+
+		Map<String, BiFunction<SearchSession, String, List<?>>> scenarios = new LinkedHashMap<>();
+		scenarios.put( "entities", (s, term) -> {
+			List<Product> hits = s.search( Product.class )
+					.where( f -> f.match().field( "name" ).matching( term ) )
+					.fetchHits( PAGE_SIZE );
+			// An endpoint would read the entities, and their supplier.
+			List<ProductView> views = new ArrayList<>();
+			for ( Product product : hits ) {
+				views.add( new ProductView( product.name, product.brand, product.price ) );
+				assertThat( product.supplier.name ).isNotNull();
+			}
+			return views;
+		} );
+		scenarios.put( "field projections", (s, term) -> s.search( Product.class )
+				.select( f -> f.composite()
+						.from( f.field( "name", String.class ), f.field( "brand", String.class ),
+								f.field( "price", Integer.class ) )
+						.asList() )
+				.where( f -> f.match().field( "name" ).matching( term ) )
+				.fetchHits( PAGE_SIZE ) );
+		scenarios.put( "composite projection", (s, term) -> s.search( Product.class )
+				.select( f -> f.composite()
+						.from( f.field( "name", String.class ), f.field( "brand", String.class ),
+								f.field( "price", Integer.class ) )
+						.as( ProductView::new ) )
+				.where( f -> f.match().field( "name" ).matching( term ) )
+				.fetchHits( PAGE_SIZE ) );
+		scenarios.put( "projection constructor", (s, term) -> s.search( Product.class )
+				.select( ProductView.class )
+				.where( f -> f.match().field( "name" ).matching( term ) )
+				.fetchHits( PAGE_SIZE ) );
+		scenarios.put( "ids", (s, term) -> s.search( Product.class )
+				.select( f -> f.id() )
+				.where( f -> f.match().field( "name" ).matching( term ) )
+				.fetchHits( PAGE_SIZE ) );
+
+		LatencySampler sampler = new LatencySampler( SAMPLES, SAMPLE_BUDGET_MS );
+		scenarios.values().forEach( scenario -> warmUp( sampler, scenario, terms ) );
+		Map<String, Measurement> measurements = new LinkedHashMap<>();
+		scenarios.forEach( (name, scenario) -> measurements.put( name, measure( sampler, scenario, terms ) ) );
+
+		assertThat( measurements.get( "entities" ).statementsPerPage ).isGreaterThan( 0 );
+		assertThat( measurements.get( "projection constructor" ).statementsPerPage ).isZero();
+
+		StringBuilder sb = new StringBuilder( String.format( "%d products, pages of %d hits:%n", PRODUCTS, PAGE_SIZE ) );
+		sb.append( String.format( "%-24s %10s %10s %12s %10s %8s%n", "hits as", "p50 ms", "p99 ms", "KB/page", "SQL/page", "samples" ) );
+		measurements.forEach( (name, measurement) -> sb.append( String.format( "%-24s %s%n", name, measurement ) ) );
+		log.info( sb );
+	}
+
+	private void populate(CorpusGenerator corpus) {
+		List<Supplier> suppliers = new ArrayList<>();
+		try ( Session session = getSessionFactory().openSession() ) {
+			session.beginTransaction();
+			for ( int i = 0; i < SUPPLIERS; i++ ) {
+				Supplier supplier = new Supplier( corpus.nextText( 2 ) );
+				session.persist( supplier );
+				suppliers.add( supplier );
+			}
+			session.getTransaction().commit();
+		}
+		for ( int batch = 0; batch < PRODUCTS; batch += BATCH_SIZE ) {
+			try ( Session session = getSessionFactory().openSession() ) {
+				session.beginTransaction();
+				for ( int i = batch; i < Math.min( PRODUCTS, batch + BATCH_SIZE ); i++ ) {
+					session.persist( new Product( corpus.nextText( 2 + corpus.nextInt( 4 ) ), BRANDS[corpus.nextInt( BRANDS.length )],
+							100 + corpus.nextInt( 100_000 ), corpus.nextDocument(),
+							session.getReference( Supplier.class, suppliers.get( corpus.nextInt( SUPPLIERS ) ).id ) ) );
+				}
+				session.getTransaction().commit();
+			}
+		}
+	}
+
+	private void warmUp(LatencySampler sampler, BiFunction<SearchSession, String, List<?>> scenario, String[] terms) {
+		try ( Session session = getSessionFactory().openSession() ) {
+			sampler.warmUp( page( session, scenario, terms ) );
+		}
+	}
+
+	private Measurement measure(LatencySampler sampler, BiFunction<SearchSession, String, List<?>> scenario, String[] terms) {
+		Statistics statistics = getSessionFactory().getStatistics();
+		long statementsAtStart = statistics.getPrepareStatementCount();
+		try ( Session session = getSessionFactory().openSession() ) {
+			LatencySampler.Latencies latencies = sampler.measure( page( session, scenario, terms ) );
+			return new Measurement( latencies,
+					( statistics.getPrepareStatementCount() - statementsAtStart ) / (double) latencies.count() );
+		}
+	}
+
+	/**
+	 * @return Fetches the page of hits of the i-th term, and returns the number of hits.
+	 */
+	private static IntToLongFunction page(Session session, BiFunction<SearchSession, String, List<?>> scenario, String[] terms) {
+		SearchSession searchSession = Search.session( session );
+		return i -> {
+			// Load entities from the database every time, as the new session of a search endpoint would.
+			session.clear();
+			List<?> hits = scenario.apply( searchSession, terms[i] );
+			assertThat( hits ).hasSizeLessThanOrEqualTo( PAGE_SIZE );
+			return hits.size();
+		};
+	}
+
+	private static final class Measurement {
+
+		private final LatencySampler.Latencies latencies;
+		private final double statementsPerPage;
+
+		private Measurement(LatencySampler.Latencies latencies, double statementsPerPage) {
+			this.latencies = latencies;
+			this.statementsPerPage = statementsPerPage;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%10.2f %10.2f %12d %10.1f %8d", latencies.percentileMillis( 0.5 ), latencies.percentileMillis( 0.99 ),
+					latencies.allocatedBytesPerSample() / 1024, statementsPerPage, latencies.count() );
+		}
+	}
+
+	@Entity(name = "Product")
+	@Indexed
+	public static class Product {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		@FullTextField(analyzer = "nameAnalyzer", projectable = Projectable.YES)
+		private String name;
+
+		@KeywordField(projectable = Projectable.YES)
+		private String brand;
+
+		@GenericField(projectable = Projectable.YES)
+		private int price;
+
+		// Loaded with the entity, but not needed by the endpoint.
+		@Lob
+		private String description;
+
+		@ManyToOne
+		private Supplier supplier;
+
+		public Product() {
+		}
+
+		public Product(String name, String brand, int price, String description, Supplier supplier) {
+			this.name = name;
+			this.brand = brand;
+			this.price = price;
+			this.description = description;
+			this.supplier = supplier;
+		}
+	}
+
+	@Entity(name = "Supplier")
+	public static class Supplier {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		private String name;
+
+		public Supplier() {
+		}
+
+		public Supplier(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Adds {@link ProductView} to the mapping: Hibernate Search only finds projection constructors by itself
+	 * in Jandex indexes, which the test classes do not have.
+	 */
+	public static class ProjectionMappingConfigurer implements HibernateOrmSearchMappingConfigurer {
+		@Override
+		public void configure(HibernateOrmMappingConfigurationContext context) {
+			context.annotationMapping().add( ProductView.class );
+		}
+	}
+
+	/**
+	 * The three fields a search endpoint returns.
+	 */
+	public static class ProductView {
+
+		private final String name;
+		private final String brand;
+		private final int price;
+
+		@ProjectionConstructor
+		public ProductView(@FieldProjection(path = "name") String name, @FieldProjection(path = "brand") String brand,
+				@FieldProjection(path = "price") Integer price) {
+			this.name = name;
+			this.brand = brand;
+			this.price = price;
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.hibernate.search.bugs;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.search.mapper.orm.Search;
+
+/**
+ * Searches for the entities it is given until found, and records how long after their commit that was:
+ * the indexing lag, as seen by a concurrent search.
+ * Polls every millisecond, with one search for all the entities not found yet, so that it keeps up with the writers.
+ * The lag includes the duration of that search, which refreshes the index reader: see {@link #getSearchNanos()}.
+ * <p>
+ * Typical usage: run it on its own thread, {@link #track(Object, long)} the entities committed by the writers,
+ * then, once they are all indexed, {@link #stop()} it and wait for the thread.
+ */
+public final class IndexingLagProbe implements Runnable {
+
+	private final SessionFactory sessionFactory;
+
+	private final Class<?> entityType;
+
+	private final BlockingQueue<Map.Entry<Object, Long>> tracked = new LinkedBlockingQueue<>();
+
+	private final List<Long> lagNanos = new ArrayList<>();
+
+	private final List<Long> searchNanos = new ArrayList<>();
+
+	private volatile boolean stopped;
+
+	public IndexingLagProbe(SessionFactory sessionFactory, Class<?> entityType) {
+		this.sessionFactory = sessionFactory;
+		this.entityType = entityType;
+	}
+
+	/**
+	 * @param committedNanos The {@link System#nanoTime()} when the commit of the entity returned.
+	 */
+	public void track(Object id, long committedNanos) {
+		tracked.add( new AbstractMap.SimpleImmutableEntry<>( id, committedNanos ) );
+	}
+
+	/**
+	 * Makes {@link #run()} return once it found all the entities tracked so far.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return The lag of each entity, once {@link #run()} is done.
+	 */
+	public List<Long> getLagNanos() {
+		return lagNanos;
+	}
+
+	/**
+	 * @return The duration of each search, once {@link #run()} is done.
+	 */
+	public List<Long> getSearchNanos() {
+		return searchNanos;
+	}
+
+	@Override
+	public void run() {
+		// Commit times by id.
+		Map<Object, Long> pending = new HashMap<>();
+		try ( Session session = sessionFactory.openSession() ) {
+			while ( !stopped || !tracked.isEmpty() || !pending.isEmpty() ) {
+				for ( Map.Entry<Object, Long> entity; ( entity = tracked.poll() ) != null; ) {
+					pending.put( entity.getKey(), entity.getValue() );
+				}
+				if ( !pending.isEmpty() ) {
+					long start = System.nanoTime();
+					List<Object> found = Search.session( session ).search( entityType )
+							.select( f -> f.id() )
+							.where( f -> f.id().matchingAny( pending.keySet() ) )
+							.fetchHits( pending.size() );
+					long now = System.nanoTime();
+					searchNanos.add( now - start );
+					for ( Object id : found ) {
+						lagNanos.add( now - pending.remove( id ) );
+					}
+				}
+				Thread.sleep( 1 );
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
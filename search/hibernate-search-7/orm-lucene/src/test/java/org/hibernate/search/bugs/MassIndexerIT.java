@@ -0,0 +1,191 @@
+package org.hibernate.search.bugs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.IndexedEmbedded;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.ScaledNumberField;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+
+/**
+ * This template demonstrates how to report a performance issue with the MassIndexer:
+ * it fills H2 with products, each in a category, with plain SQL, then reindexes them with the MassIndexer
+ * for each combination of the configured threads and batch sizes.
+ * <p>
+ * For each run, it reports the documents indexed per second, how the busy time of the Hibernate Search threads
+ * splits between loading (database and Hibernate ORM) and indexing (document building and Lucene),
+ * how much each group of threads waited, and the peak heap usage. See {@link ThreadActivitySampler}.
+ * <p>
+ * Tune it with the following system properties: {@code massindexer.rows} (e.g. {@code 2000000}),
+ * and lists such as {@code 1,4} for {@code massindexer.types.parallel} ({@code typesToIndexInParallel}),
+ * {@code massindexer.threads} ({@code threadsToLoadObjects}), {@code massindexer.batch.sizes}
+ * ({@code batchSizeToLoadObjects}) and {@code massindexer.id.fetch.sizes} ({@code idFetchSize}).
+ * Without {@code -Dbenchmarks=full}, it only reindexes 2000 products with a batch size of 100, as a smoke test.
+ */
+@Isolated
+@Execution(ExecutionMode.SAME_THREAD)
+public class MassIndexerIT extends SearchTestBase {
+
+	private static final Logger log = Logger.getLogger( MassIndexerIT.class );
+
+	private static final int ROWS = benchmarkSize( "massindexer.rows", 50_000, 2_000 );
+
+	private static final int[] TYPES_IN_PARALLEL = ints( "massindexer.types.parallel", "1" );
+
+	private static final int[] THREADS = ints( "massindexer.threads", "4" );
+
+	private static final int[] BATCH_SIZES = ints( "massindexer.batch.sizes", FULL_BENCHMARKS ? "10,100" : "100" );
+
+	private static final int[] ID_FETCH_SIZES = ints( "massindexer.id.fetch.sizes", "100" );
+
+	private static final int CATEGORIES = 100;
+
+	private static final long SAMPLING_INTERVAL_MS = 10;
+
+	@Override
+	public Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Category.class, Product.class };
+	}
+
+	@Test
+	public void massIndexer() throws InterruptedException {
+		populate();
+
+		Map<String, String> summary = new LinkedHashMap<>();
+		for ( int typesInParallel : TYPES_IN_PARALLEL ) {
+			for ( int threads : THREADS ) {
+				for ( int batchSize : BATCH_SIZES ) {
+					for ( int idFetchSize : ID_FETCH_SIZES ) {
+						String run = String.format( "%d/%d/%d/%d", typesInParallel, threads, batchSize, idFetchSize );
+						summary.put( run, massIndex( typesInParallel, threads, batchSize, idFetchSize ) );
+					}
+				}
+			}
+		}
+
+		StringBuilder sb = new StringBuilder( String.format( "Mass indexing of %d products and %d categories:%n", ROWS, CATEGORIES ) );
+		sb.append( String.format( "%-24s %8s %8s %8s %8s %10s %8s%n",
+				"types/threads/batch/ids", "docs/s", "s", "load", "index", "peak MB", "GC ms" ) );
+		summary.forEach( (run, results) -> sb.append( String.format( "%-24s %s%n", run, results ) ) );
+		log.info( sb );
+	}
+
+	private String massIndex(int typesInParallel, int threads, int batchSize, int idFetchSize) throws InterruptedException {
+		ThreadActivitySampler sampler = new ThreadActivitySampler( SAMPLING_INTERVAL_MS );
+		long nanos;
+		try ( Session session = getSessionFactory().openSession() ) {
+			SearchSession searchSession = Search.session( session );
+			sampler.start();
+			long start = System.nanoTime();
+			searchSession.massIndexer( Product.class, Category.class )
+					.typesToIndexInParallel( typesInParallel )
+					.threadsToLoadObjects( threads )
+					.batchSizeToLoadObjects( batchSize )
+					.idFetchSize( idFetchSize )
+					.startAndWait();
+			nanos = System.nanoTime() - start;
+		}
+		ThreadActivitySampler.Report report = sampler.stop();
+
+		try ( Session session = getSessionFactory().openSession() ) {
+			long documents = Search.session( session ).search( Product.class ).where( f -> f.matchAll() ).fetchTotalHitCount();
+			assertThat( documents ).isEqualTo( ROWS );
+		}
+
+		double seconds = nanos / (double) TimeUnit.SECONDS.toNanos( 1 );
+		double documentsPerSecond = ( ROWS + CATEGORIES ) / seconds;
+		double load = report.getBusyShare( ThreadActivitySampler.DATABASE, ThreadActivitySampler.ORM );
+		double index = report.getBusyShare( ThreadActivitySampler.SEARCH, ThreadActivitySampler.LUCENE );
+		long peakHeapMegabytes = report.getPeakHeapBytes() / 1024 / 1024;
+		log.infof( "typesToIndexInParallel %d, threadsToLoadObjects %d, batchSizeToLoadObjects %d, idFetchSize %d: "
+						+ "%.0f documents/s, busy threads loading %.0f%% of the time, indexing %.0f%%, peak heap %d MB, GC %d ms;"
+						+ " activity by thread:%s",
+				typesInParallel, threads, batchSize, idFetchSize, documentsPerSecond, 100 * load, 100 * index,
+				peakHeapMegabytes, report.getGcMillis(), report );
+		return String.format( "%8.0f %8.1f %7.0f%% %7.0f%% %10d %8d", documentsPerSecond, seconds, 100 * load, 100 * index,
+				peakHeapMegabytes, report.getGcMillis() );
+	}
+
+	/**
+	 * Inserts the rows with SQL, which is much faster than persisting entities, and does not index anything.
+	 */
+	private void populate() {
+		try ( Session session = getSessionFactory().openSession() ) {
+			session.beginTransaction();
+			session.createNativeMutationQuery( "insert into Category (id, name) select x, 'category ' || x from system_range(1, " + CATEGORIES + ")" )
+					.executeUpdate();
+			session.createNativeMutationQuery( "insert into Product (id, name, description, price, category_id)"
+					+ " select x, 'product ' || x, 'the product number ' || x || ' of category ' || mod(x, " + CATEGORIES + ")"
+					+ " || ', sold since ' || (2000 + mod(x, 25)), x / 100.0, 1 + mod(x, " + CATEGORIES + ")"
+					+ " from system_range(1, " + ROWS + ")" )
+					.executeUpdate();
+			session.getTransaction().commit();
+		}
+	}
+
+	private static int[] ints(String property, String defaultValue) {
+		return Arrays.stream( System.getProperty( property, defaultValue ).split( "," ) )
+				.mapToInt( value -> Integer.parseInt( value.trim() ) )
+				.toArray();
+	}
+
+	@Entity(name = "Category")
+	@Indexed
+	public static class Category {
+
+		@Id
+		private Long id;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		private String name;
+
+		// Tells Hibernate Search which products to reindex when a category changes.
+		@OneToMany(mappedBy = "category")
+		private List<Product> products = new ArrayList<>();
+	}
+
+	@Entity(name = "Product")
+	@Indexed
+	public static class Product {
+
+		@Id
+		private Long id;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		private String name;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		private String description;
+
+		@ScaledNumberField(decimalScale = 2)
+		private BigDecimal price;
+
+		@ManyToOne(fetch = FetchType.LAZY)
+		@IndexedEmbedded(includePaths = "name")
+		private Category category;
+	}
+
+}
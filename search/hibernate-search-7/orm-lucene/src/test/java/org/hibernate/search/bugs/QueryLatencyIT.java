@@ -0,0 +1,276 @@
+package org.hibernate.search.bugs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import org.hibernate.Session;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.search.engine.backend.types.Aggregable;
+import org.hibernate.search.engine.backend.types.Sortable;
+import org.hibernate.search.engine.search.aggregation.AggregationKey;
+import org.hibernate.search.engine.search.predicate.dsl.BooleanPredicateClausesStep;
+import org.hibernate.search.engine.search.query.SearchResult;
+import org.hibernate.search.engine.search.query.SearchScroll;
+import org.hibernate.search.engine.search.query.SearchScrollResult;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.GenericField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.KeywordField;
+import org.hibernate.search.util.common.data.Range;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+
+/**
+ * This template demonstrates how to measure, or report, search latency on a realistic corpus:
+ * it indexes books whose text {@link CorpusGenerator} generates, with Zipfian term frequencies,
+ * then runs each type of query below many times, with different terms, and reports the median and 99th percentile
+ * latency of each: match (of a term drawn by frequency, then of a rare term), phrase, wildcard, range,
+ * boolean with many clauses, sorted, with aggregations, and deep pagination, with an offset then with a scroll.
+ * <p>
+ * Queries only fetch identifiers: this measures the search itself, not the loading of entities.
+ * The same seed generates the same corpus and queries, so that runs on different versions can be compared.
+ * <p>
+ * Tune it with the {@code query.documents}, {@code query.vocabulary}, {@code query.zipf.exponent},
+ * {@code query.document.words.min}, {@code query.document.words.max}, {@code query.seed}, {@code query.samples},
+ * {@code query.sample.budget.ms}, {@code query.bool.clauses} and {@code query.page.depth} system properties.
+ * Without {@code -Dbenchmarks=full}, it only indexes 2000 documents, and samples each query 20 times, as a smoke test.
+ */
+@Isolated
+@Execution(ExecutionMode.SAME_THREAD)
+public class QueryLatencyIT extends SearchTestBase {
+
+	private static final Logger log = Logger.getLogger( QueryLatencyIT.class );
+
+	private static final int DOCUMENTS = benchmarkSize( "query.documents", 20_000, 2_000 );
+
+	private static final int VOCABULARY = Integer.getInteger( "query.vocabulary", 20_000 );
+
+	private static final double ZIPF_EXPONENT = Double.parseDouble( System.getProperty( "query.zipf.exponent", "1.0" ) );
+
+	private static final int MIN_WORDS = Integer.getInteger( "query.document.words.min", 20 );
+
+	private static final int MAX_WORDS = Integer.getInteger( "query.document.words.max", 500 );
+
+	private static final long SEED = Long.getLong( "query.seed", 42 );
+
+	private static final int SAMPLES = benchmarkSize( "query.samples", 200, 20 );
+
+	// Slow queries are sampled fewer times, down to once.
+	private static final long SAMPLE_BUDGET_MS = Long.getLong( "query.sample.budget.ms", 5_000 );
+
+	private static final int BOOL_CLAUSES = Integer.getInteger( "query.bool.clauses", 20 );
+
+	private static final int PAGE_DEPTH = benchmarkSize( "query.page.depth", 5_000, 500 );
+
+	private static final int PAGE_SIZE = 20;
+
+	private static final int BATCH_SIZE = 1_000;
+
+	private static final String[] CATEGORIES = {
+			"fiction", "history", "science", "poetry", "travel", "cooking", "art", "biography", "law", "children"
+	};
+
+	private static final AggregationKey<Map<String, Long>> CATEGORY_COUNTS = AggregationKey.of( "categories" );
+
+	private static final AggregationKey<Map<Range<Integer>, Long>> PAGE_COUNTS = AggregationKey.of( "pages" );
+
+	@Override
+	public Class<?>[] getAnnotatedClasses() {
+		return new Class<?>[] { Book.class };
+	}
+
+	@Override
+	protected void configure(StandardServiceRegistryBuilder registryBuilder) {
+		registryBuilder.applySetting( AvailableSettings.STATEMENT_BATCH_SIZE, "50" );
+	}
+
+	@Test
+	public void queryLatency() {
+		CorpusGenerator corpus = CorpusGenerator.withSeed( SEED )
+				.vocabularySize( VOCABULARY )
+				.zipfExponent( ZIPF_EXPONENT )
+				.documentWords( MIN_WORDS, MAX_WORDS );
+		assertThat( PAGE_DEPTH ).as( "query.page.depth" ).isLessThan( DOCUMENTS );
+		List<String> phraseSources = populate( corpus );
+
+		Map<String, ToLongFunction<SearchSession>> queries = new LinkedHashMap<>();
+		queries.put( "match", s -> total( s.search( Book.class )
+				.select( f -> f.id() )
+				.where( f -> f.match().field( "body" ).matching( corpus.nextTerm() ) )
+				.fetch( PAGE_SIZE ) ) );
+		queries.put( "match, rare term", s -> total( s.search( Book.class )
+				.select( f -> f.id() )
+				.where( f -> f.match().field( "body" ).matching( corpus.nextRareTerm() ) )
+				.fetch( PAGE_SIZE ) ) );
+		queries.put( "phrase", s -> total( s.search( Book.class )
+				.select( f -> f.id() )
+				.where( f -> f.phrase().field( "body" ).matching( phrase( corpus, phraseSources ) ) )
+				.fetch( PAGE_SIZE ) ) );
+		queries.put( "wildcard", s -> total( s.search( Book.class )
+				.select( f -> f.id() )
+				.where( f -> f.wildcard().field( "body" ).matching( corpus.nextTerm().substring( 0, 3 ) + "*" ) )
+				.fetch( PAGE_SIZE ) ) );
+		queries.put( "range", s -> {
+			int year = 1950 + corpus.nextInt( 70 );
+			return total( s.search( Book.class )
+					.select( f -> f.id() )
+					.where( f -> f.range().field( "publicationYear" ).between( year, year + 4 ) )
+					.fetch( PAGE_SIZE ) );
+		} );
+		queries.put( "bool, " + BOOL_CLAUSES + " clauses", s -> total( s.search( Book.class )
+				.select( f -> f.id() )
+				.where( f -> {
+					BooleanPredicateClausesStep<?> bool = f.bool();
+					for ( int i = 0; i < BOOL_CLAUSES; i++ ) {
+						bool.should( f.match().field( "body" ).matching( corpus.nextTerm() ) );
+					}
+					return bool;
+				} )
+				.fetch( PAGE_SIZE ) ) );
+		queries.put( "match, sorted", s -> total( s.search( Book.class )
+				.select( f -> f.id() )
+				.where( f -> f.match().field( "body" ).matching( corpus.nextTerm() ) )
+				.sort( f -> f.field( "pages" ).desc().then().field( "publicationYear" ) )
+				.fetch( PAGE_SIZE ) ) );
+		queries.put( "match, aggregations", s -> {
+			SearchResult<Object> result = s.search( Book.class )
+					.select( f -> f.id() )
+					.where( f -> f.match().field( "body" ).matching( corpus.nextTerm() ) )
+					.aggregation( CATEGORY_COUNTS, f -> f.terms().field( "category", String.class ) )
+					.aggregation( PAGE_COUNTS, f -> f.range().field( "pages", Integer.class )
+							.range( 0, 100 ).range( 100, 300 ).range( 300, null ) )
+					.fetch( PAGE_SIZE );
+			assertThat( result.aggregation( CATEGORY_COUNTS ) ).isNotNull();
+			return total( result );
+		} );
+		queries.put( "offset " + PAGE_DEPTH, s -> total( s.search( Book.class )
+				.select( f -> f.id() )
+				.where( f -> f.matchAll() )
+				.sort( f -> f.field( "pages" ) )
+				.fetch( PAGE_DEPTH, PAGE_SIZE ) ) );
+		queries.put( "scroll to " + PAGE_DEPTH, s -> {
+			try ( SearchScroll<Object> scroll = s.search( Book.class )
+					.select( f -> f.id() )
+					.where( f -> f.matchAll() )
+					.sort( f -> f.field( "pages" ) )
+					.scroll( PAGE_SIZE ) ) {
+				SearchScrollResult<Object> chunk = scroll.next();
+				for ( int fetched = PAGE_SIZE; fetched <= PAGE_DEPTH && chunk.hasHits(); fetched += PAGE_SIZE ) {
+					chunk = scroll.next();
+				}
+				assertThat( chunk.hits() ).isNotEmpty();
+				return chunk.total().hitCount();
+			}
+		} );
+
+		Map<String, String> summary = new LinkedHashMap<>();
+		LatencySampler sampler = new LatencySampler( SAMPLES, SAMPLE_BUDGET_MS );
+		try ( Session session = getSessionFactory().openSession() ) {
+			SearchSession searchSession = Search.session( session );
+			queries.values().forEach( query -> sampler.warmUp( i -> query.applyAsLong( searchSession ) ) );
+			queries.forEach( (type, query) -> {
+				LatencySampler.Latencies latencies = sampler.measure( i -> query.applyAsLong( searchSession ) );
+				summary.put( type, String.format( "%10.2f %10.2f %8d %12d", latencies.percentileMillis( 0.5 ),
+						latencies.percentileMillis( 0.99 ), latencies.count(), latencies.meanTotal() ) );
+			} );
+		}
+
+		StringBuilder sb = new StringBuilder( String.format( "%d documents of %d to %d words, vocabulary of %d terms, Zipf exponent %.2f:%n",
+				DOCUMENTS, MIN_WORDS, MAX_WORDS, VOCABULARY, ZIPF_EXPONENT ) );
+		sb.append( String.format( "%-24s %10s %10s %8s %12s%n", "query", "p50 ms", "p99 ms", "samples", "mean hits" ) );
+		summary.forEach( (type, results) -> sb.append( String.format( "%-24s %s%n", type, results ) ) );
+		log.info( sb );
+	}
+
+	/**
+	 * Indexes the books, in batches.
+	 *
+	 * @return A few bodies, to take phrases from.
+	 */
+	private List<String> populate(CorpusGenerator corpus) {
+		List<String> phraseSources = new ArrayList<>();
+		for ( int batch = 0; batch < DOCUMENTS; batch += BATCH_SIZE ) {
+			try ( Session session = getSessionFactory().openSession() ) {
+				session.beginTransaction();
+				for ( int i = batch; i < Math.min( DOCUMENTS, batch + BATCH_SIZE ); i++ ) {
+					Book book = new Book( corpus.nextText( 1 + corpus.nextInt( 6 ) ), corpus.nextDocument(),
+							CATEGORIES[corpus.nextInt( CATEGORIES.length )], 10 + corpus.nextInt( 900 ), 1950 + corpus.nextInt( 75 ) );
+					session.persist( book );
+					if ( i % 100 == 0 ) {
+						phraseSources.add( book.body );
+					}
+				}
+				session.getTransaction().commit();
+			}
+		}
+		return phraseSources;
+	}
+
+	/**
+	 * @return Three consecutive words of a body.
+	 */
+	private static String phrase(CorpusGenerator corpus, List<String> phraseSources) {
+		String[] words = phraseSources.get( corpus.nextInt( phraseSources.size() ) ).split( " " );
+		int start = corpus.nextInt( Math.max( 1, words.length - 2 ) );
+		return String.join( " ", Arrays.asList( words ).subList( start, Math.min( words.length, start + 3 ) ) );
+	}
+
+	private static long total(SearchResult<?> result) {
+		return result.total().hitCount();
+	}
+
+	@Entity(name = "Book")
+	@Indexed
+	public static class Book {
+
+		@Id
+		@GeneratedValue
+		private Long id;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		private String title;
+
+		@FullTextField(analyzer = "nameAnalyzer")
+		@Lob
+		private String body;
+
+		@KeywordField(sortable = Sortable.YES, aggregable = Aggregable.YES)
+		private String category;
+
+		@GenericField(sortable = Sortable.YES, aggregable = Aggregable.YES)
+		private int pages;
+
+		@GenericField(sortable = Sortable.YES)
+		private int publicationYear;
+
+		public Book() {
+		}
+
+		public Book(String title, String body, String category, int pages, int publicationYear) {
+			this.title = title;
+			this.body = body;
+			this.category = category;
+			this.pages = pages;
+			this.publicationYear = publicationYear;
+		}
+	}
+
+}
@@ -1,21 +1,73 @@
 package org.hibernate.search.bugs;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.SessionFactoryBuilder;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 
 public abstract class SearchTestBase {
 
+	private static final String DIRECTORY_ROOT = "hibernate.search.backend.directory.root";
+
+	/**
+	 * Benchmark ITs, such as MassIndexerIT, run at full size with {@code mvn verify -Dbenchmarks=full}.
+	 * By default, they run a smoke test: a workload small enough to check they still work in a plain build.
+	 * They are {@code @Isolated}, and run their methods on one thread, so that {@code mvn verify -Pparallel}
+	 * does not run other tests, or other benchmarks, next to the one being measured.
+	 */
+	protected static final boolean FULL_BENCHMARKS = "full".equals( System.getProperty( "benchmarks" ) );
+
+	// Numbers the threads that build SessionFactories, as long as these threads live.
+	private static final AtomicInteger ISOLATION_COUNTER = new AtomicInteger();
+
+	private static final ThreadLocal<Integer> ISOLATION_ID = ThreadLocal.withInitial( ISOLATION_COUNTER::incrementAndGet );
+
 	private SessionFactory sessionFactory;
 
 	@BeforeEach
 	public void setUp() {
+		this.sessionFactory = buildSessionFactory( registryBuilder -> { } );
+	}
+
+	@AfterEach
+	public void tearDown() {
+		try ( SessionFactory sessionFactoryToClose = this.sessionFactory ) {
+			// Nothing to do: we just want resources to get closed.
+		}
+	}
+
+	/**
+	 * Closes the SessionFactory, and builds a new one, with the settings of {@code registryAdapter} applied last.
+	 * For tests comparing configurations that can't be changed at runtime.
+	 */
+	protected void rebuildSessionFactory(Consumer<StandardServiceRegistryBuilder> registryAdapter) {
+		tearDown();
+		this.sessionFactory = null;
+		this.sessionFactory = buildSessionFactory( registryAdapter );
+	}
+
+	/**
+	 * Override to apply settings on top of hibernate.properties.
+	 */
+	protected void configure(StandardServiceRegistryBuilder registryBuilder) {
+	}
+
+	private SessionFactory buildSessionFactory(Consumer<StandardServiceRegistryBuilder> registryAdapter) {
 		StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder();
+		configure( registryBuilder );
+		registryAdapter.accept( registryBuilder );
+		if ( Boolean.getBoolean( "junit.jupiter.execution.parallel.enabled" ) ) {
+			isolateFromConcurrentTests( registryBuilder );
+		}
 		MetadataSources ms = new MetadataSources( registryBuilder.build() );
 		Class<?>[] annotatedClasses = getAnnotatedClasses();
 		if ( annotatedClasses != null ) {
@@ -27,14 +79,32 @@ public abstract class SearchTestBase {
 		Metadata metadata = ms.buildMetadata();
 
 		final SessionFactoryBuilder sfb = metadata.getSessionFactoryBuilder();
-		this.sessionFactory = sfb.build();
+		return sfb.build();
 	}
 
-	@AfterEach
-	public void tearDown() {
-		try ( SessionFactory sessionFactoryToClose = this.sessionFactory ) {
-			// Nothing to do: we just want resources to get closed.
+	// Tests running concurrently in this JVM must not share a database nor indexes: give each thread its own.
+	private static void isolateFromConcurrentTests(StandardServiceRegistryBuilder registryBuilder) {
+		String suffix = "_thread" + ISOLATION_ID.get();
+		Map<?, ?> settings = registryBuilder.getSettings();
+
+		String url = (String) settings.get( AvailableSettings.URL );
+		if ( url != null && url.startsWith( "jdbc:h2:mem:" ) ) {
+			int nameEnd = url.indexOf( ';' ) < 0 ? url.length() : url.indexOf( ';' );
+			registryBuilder.applySetting( AvailableSettings.URL, url.substring( 0, nameEnd ) + suffix + url.substring( nameEnd ) );
 		}
+
+		String directoryRoot = (String) settings.get( DIRECTORY_ROOT );
+		if ( directoryRoot != null ) {
+			registryBuilder.applySetting( DIRECTORY_ROOT, directoryRoot + suffix );
+		}
+	}
+
+	/**
+	 * @return The value of the system property {@code property}, if set,
+	 * otherwise {@code full} or {@code smoke} depending on {@link #FULL_BENCHMARKS}.
+	 */
+	protected static int benchmarkSize(String property, int full, int smoke) {
+		return Integer.getInteger( property, FULL_BENCHMARKS ? full : smoke );
 	}
 
 	protected abstract Class<?>[] getAnnotatedClasses();
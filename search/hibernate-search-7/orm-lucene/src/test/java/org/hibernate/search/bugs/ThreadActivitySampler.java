@@ -0,0 +1,172 @@
+package org.hibernate.search.bugs;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the stacks of the Hibernate Search threads at a fixed interval, to tell what they spend their time on:
+ * waiting, running database (H2) code, loading entities in Hibernate ORM, building documents in Hibernate Search,
+ * or writing to Lucene. Also records the peak heap usage and the time spent in GC while sampling.
+ * <p>
+ * Threads are grouped by name, with numbers masked, e.g. all the entity loading threads of a mass indexer together.
+ * Typical usage: {@link #start()} before the work, then log {@link #stop()}.
+ */
+public final class ThreadActivitySampler {
+
+	public static final String WAITING = "waiting";
+	public static final String DATABASE = "database";
+	public static final String ORM = "ORM loading";
+	public static final String SEARCH = "document building";
+	public static final String LUCENE = "index writing";
+	public static final String OTHER = "other";
+
+	private static final String THREAD_NAME_PREFIX = "Hibernate Search";
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	private final long intervalMillis;
+
+	private final Map<String, Map<String, Integer>> samples = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService scheduler;
+
+	private volatile long peakHeapBytes;
+
+	private long gcMillisAtStart;
+
+	public ThreadActivitySampler(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+
+	public void start() {
+		gcMillisAtStart = gcMillis();
+		peakHeapBytes = memory.getHeapMemoryUsage().getUsed();
+		scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+			Thread thread = new Thread( runnable, "ThreadActivitySampler" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		scheduler.scheduleAtFixedRate( this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS );
+	}
+
+	public Report stop() throws InterruptedException {
+		scheduler.shutdown();
+		scheduler.awaitTermination( 1, TimeUnit.MINUTES );
+		return new Report( new TreeMap<>( samples ), peakHeapBytes, gcMillis() - gcMillisAtStart );
+	}
+
+	private void sample() {
+		peakHeapBytes = Math.max( peakHeapBytes, memory.getHeapMemoryUsage().getUsed() );
+		for ( ThreadInfo thread : threads.dumpAllThreads( false, false ) ) {
+			if ( thread == null || !thread.getThreadName().startsWith( THREAD_NAME_PREFIX ) ) {
+				continue;
+			}
+			String group = thread.getThreadName().replaceAll( "\\d+", "N" );
+			samples.computeIfAbsent( group, ignored -> new TreeMap<>() ).merge( activity( thread ), 1, Integer::sum );
+		}
+	}
+
+	private static String activity(ThreadInfo thread) {
+		if ( thread.getThreadState() != Thread.State.RUNNABLE ) {
+			return WAITING;
+		}
+		// The innermost library frame tells who is working.
+		for ( StackTraceElement frame : thread.getStackTrace() ) {
+			String className = frame.getClassName();
+			if ( className.startsWith( "org.h2." ) ) {
+				return DATABASE;
+			}
+			if ( className.startsWith( "org.apache.lucene." ) ) {
+				return LUCENE;
+			}
+			if ( className.startsWith( "org.hibernate.search." ) ) {
+				return SEARCH;
+			}
+			if ( className.startsWith( "org.hibernate." ) ) {
+				return ORM;
+			}
+		}
+		return OTHER;
+	}
+
+	private static long gcMillis() {
+		long total = 0;
+		for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ) {
+			total += Math.max( 0, gc.getCollectionTime() );
+		}
+		return total;
+	}
+
+	public static final class Report {
+
+		private final Map<String, Map<String, Integer>> samples;
+		private final long peakHeapBytes;
+		private final long gcMillis;
+
+		private Report(Map<String, Map<String, Integer>> samples, long peakHeapBytes, long gcMillis) {
+			this.samples = samples;
+			this.peakHeapBytes = peakHeapBytes;
+			this.gcMillis = gcMillis;
+		}
+
+		/**
+		 * @return The share of the samples of busy (not waiting) threads spent on any of {@code activities}, from 0 to 1.
+		 */
+		public double getBusyShare(String... activities) {
+			List<String> matching = Arrays.asList( activities );
+			long busy = 0;
+			long matched = 0;
+			for ( Map<String, Integer> byActivity : samples.values() ) {
+				for ( Map.Entry<String, Integer> entry : byActivity.entrySet() ) {
+					if ( !entry.getKey().equals( WAITING ) ) {
+						busy += entry.getValue();
+						if ( matching.contains( entry.getKey() ) ) {
+							matched += entry.getValue();
+						}
+					}
+				}
+			}
+			return busy == 0 ? 0 : (double) matched / busy;
+		}
+
+		/**
+		 * @return The number of samples of each activity, by thread group.
+		 */
+		public Map<String, Map<String, Integer>> getSamples() {
+			return samples;
+		}
+
+		public long getPeakHeapBytes() {
+			return peakHeapBytes;
+		}
+
+		public long getGcMillis() {
+			return gcMillis;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			samples.forEach( (group, activities) -> {
+				int total = activities.values().stream().mapToInt( Integer::intValue ).sum();
+				sb.append( String.format( "%n\t%s:", group ) );
+				activities.forEach( (activity, count) -> sb.append( String.format( " %s %.0f%%", activity, 100.0 * count / total ) ) );
+			} );
+			return sb.toString();
+		}
+	}
+
+}